@@ -0,0 +1,109 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+
+/**
+ * Synthetic commands measured by the benchmarks.  The annotation processor generates a descriptor for each,
+ * so both reflective and generated registration can be measured.
+ */
+public class BenchmarkCommands {
+	public enum Mode { FAST, SAFE, DEFAULT }
+
+	@SubCommand(name="small", description="A command with a single argument")
+	public static class Small implements Command {
+		@Arg(name="name")
+		String name;
+
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+		}
+	}
+
+	@SubCommand(name="options", description="A command with options of each common type")
+	public static class Options implements Command {
+		@Arg(name="name")
+		String name;
+
+		@Opt(opt="c", longOpt="count", description="A count")
+		int count;
+
+		@Opt(opt="b", longOpt="big", description="A big number")
+		long big;
+
+		@Opt(opt="r", longOpt="ratio", description="A ratio")
+		double ratio;
+
+		@Opt(opt="o", longOpt="output", description="An output file")
+		File output;
+
+		@Opt(opt="m", longOpt="mode", description="A mode")
+		Mode mode = Mode.DEFAULT;
+
+		@Opt(opt="a", longOpt="all", description="A flag")
+		boolean all;
+
+		@Opt(opt="v", longOpt="verbose", description="Another flag")
+		boolean verbose;
+
+		@Opt(opt="q", longOpt="quiet", description="Yet another flag")
+		boolean quiet;
+
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+		}
+	}
+
+	@SubCommand(name="varargs", description="A command with a vararg")
+	public static class Varargs implements Command {
+		@Opt(opt="c", longOpt="count", description="A count")
+		int count;
+
+		@Arg(name="values", isVararg=true)
+		String[] values;
+
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static final Class<? extends Command>[] COMMANDS = new Class[] { Small.class, Options.class, Varargs.class };
+	static final CommandDescriptor[] DESCRIPTORS = {
+		new BenchmarkCommands_Small_CommandDescriptor(),
+		new BenchmarkCommands_Options_CommandDescriptor(),
+		new BenchmarkCommands_Varargs_CommandDescriptor()
+	};
+
+	static final String[] SHORT_LINE = "-c 3 -b 5000000000 -r 1.5 -o out.txt -m fast -a -v name".split(" ");
+	static final String[] LONG_LINE = "--count 3 --big 5000000000 --ratio 1.5 --output out.txt --mode fast --all --verbose name".split(" ");
+	static final String[] CLUSTERED_LINE = "-avq -c3 name".split(" ");
+	static final String[] VARARG_LINE = "-c 3 a b c d e f g h i j k l m n o p".split(" ");
+
+	static CommandSummary options() {
+		return new BenchmarkCommands_Options_CommandDescriptor().createSummary();
+	}
+
+	static CommandSummary varargs() {
+		return new BenchmarkCommands_Varargs_CommandDescriptor().createSummary();
+	}
+
+	/**
+	 * @return the summary built with reflection, as {@link CommandSet#addSubCommand(Class)} does.
+	 */
+	static CommandSummary reflective(Class<? extends Command> commandClass) {
+		CommandSet commands = new CommandSet("benchmark");
+		commands.addSubCommand(commandClass);
+		return commands._subCommands.values().iterator().next();
+	}
+
+	/**
+	 * Sets an environment whose output is discarded, so printing does not dominate what is measured.
+	 */
+	static void discardOutput(int columns) {
+		PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		CommandEnvironment.set(new CommandEnvironment(null, discard, discard, null, Collections.singletonMap("COLUMNS", String.valueOf(columns))));
+	}
+}
@@ -0,0 +1,36 @@
+package jpbetz.cli;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH's usual command line, adding the gc profiler unless other profilers are given,
+ * so every suite reports its allocation rate and bytes allocated per operation:
+ *
+ * <pre>
+ *   java -jar target/benchmarks.jar              # all suites
+ *   java -jar target/benchmarks.jar Parse -p parser=native
+ * </pre>
+ */
+public class Benchmarks {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if(options.shouldHelp()) {
+			options.showHelp();
+			return;
+		}
+		Runner runner = new Runner(options);
+		if(options.shouldList()) {
+			runner.list();
+			return;
+		}
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if(options.getProfilers().isEmpty()) {
+			builder.addProfiler(GCProfiler.class);
+		}
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,77 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting a value with the {@link ValueConverter} of each common type, as looked up when a command is
+ * registered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+	private ValueConverter<?> _int;
+	private ValueConverter<?> _long;
+	private ValueConverter<?> _double;
+	private ValueConverter<?> _number;
+	private ValueConverter<?> _file;
+	private ValueConverter<?> _enum;
+	private CommandEnvironment _environment;
+
+	@Setup
+	public void setUp() {
+		_int = ValueConverters.forType(int.class);
+		_long = ValueConverters.forType(long.class);
+		_double = ValueConverters.forType(double.class);
+		_number = ValueConverters.forType(Number.class);
+		_file = ValueConverters.forType(File.class);
+		_enum = ValueConverters.forType(BenchmarkCommands.Mode.class);
+		_environment = CommandEnvironment.current();
+	}
+
+	@Benchmark
+	public int toInt() throws ParseException {
+		return _int.convertInt("12345", _environment);
+	}
+
+	@Benchmark
+	public long toLong() throws ParseException {
+		return _long.convertLong("5000000000", _environment);
+	}
+
+	@Benchmark
+	public double toDouble() throws ParseException {
+		return _double.convertDouble("1.5", _environment);
+	}
+
+	@Benchmark
+	public Object toNumber() throws ParseException {
+		return _number.convert("12345", _environment);
+	}
+
+	@Benchmark
+	public Object toFile() throws ParseException {
+		return _file.convert("out.txt", _environment);
+	}
+
+	@Benchmark
+	public Object toEnum() throws ParseException {
+		return _enum.convert("fast", _environment);
+	}
+}
@@ -0,0 +1,85 @@
+package jpbetz.cli;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole invocation through {@link CommandSet#run(String[])}: finding the command among many, parsing,
+ * converting, injecting and executing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+	@Param({ "commons", "native" })
+	String parser;
+
+	private String[] _small;
+	private String[] _options;
+	private String[] _varargs;
+	private String[] _prefix;
+	private CommandSet _app;
+
+	@Setup
+	public void setUp() {
+		BenchmarkCommands.discardOutput(80);
+		_app = new CommandSet("benchmark");
+		_app.setArgumentParser(parser.equals("native") ? new NativeArgumentParser() : new CommonsArgumentParser());
+		_app.setPrefixMatchingEnabled(true);
+		_app.addRegisteredSubCommands();
+		for(int i = 0; i < 100; i++) {
+			_app.addSubCommand("command" + i, "A lazily loaded command", BenchmarkCommands.Small.class.getName());
+		}
+		_small = line("small", new String[] { "name" });
+		_options = line("options", BenchmarkCommands.SHORT_LINE);
+		_varargs = line("varargs", BenchmarkCommands.VARARG_LINE);
+		_prefix = line("opt", BenchmarkCommands.SHORT_LINE);
+	}
+
+	private static String[] line(String command, String[] args) {
+		String[] line = new String[args.length + 1];
+		line[0] = command;
+		System.arraycopy(args, 0, line, 1, args.length);
+		return line;
+	}
+
+	@TearDown
+	public void tearDown() {
+		CommandEnvironment.clear();
+	}
+
+	@Benchmark
+	public int small() {
+		return _app.run(_small);
+	}
+
+	@Benchmark
+	public int options() {
+		return _app.run(_options);
+	}
+
+	@Benchmark
+	public int varargs() {
+		return _app.run(_varargs);
+	}
+
+	@Benchmark
+	public int prefix() {
+		return _app.run(_prefix);
+	}
+}
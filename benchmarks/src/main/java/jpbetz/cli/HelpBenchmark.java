@@ -0,0 +1,76 @@
+package jpbetz.cli;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Printing the command list and the usage of a command, from the rendered help kept by the command set and
+ * rendered again after a command is added.  Output is discarded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class HelpBenchmark {
+	@Param({ "80", "200" })
+	int columns;
+
+	private static final String[] HELP = { "help" };
+	private static final String[] USAGE = { "help", "options" };
+
+	private CommandSet _app;
+	private CommandSummary _small;
+
+	@Setup
+	public void setUp() {
+		BenchmarkCommands.discardOutput(columns);
+		_app = new CommandSet("benchmark");
+		_app.addRegisteredSubCommands();
+		for(int i = 0; i < 50; i++) {
+			_app.addSubCommand("command" + i, "A lazily loaded command with a description long enough to wrap at eighty columns",
+					BenchmarkCommands.Small.class.getName());
+		}
+		_small = _app._subCommands.get("small");
+	}
+
+	@TearDown
+	public void tearDown() {
+		CommandEnvironment.clear();
+	}
+
+	@Benchmark
+	public int commandList() {
+		return _app.run(HELP);
+	}
+
+	@Benchmark
+	public int commandListRendered() {
+		_app.addSubCommand(_small);
+		return _app.run(HELP);
+	}
+
+	@Benchmark
+	public int usage() {
+		return _app.run(USAGE);
+	}
+
+	@Benchmark
+	public int usageRendered() {
+		_app.addSubCommand(_small);
+		return _app.run(USAGE);
+	}
+}
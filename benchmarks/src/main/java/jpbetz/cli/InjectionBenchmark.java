@@ -0,0 +1,68 @@
+package jpbetz.cli;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Injecting the options and arguments of a parsed command line into a new command instance, with the setters
+ * compiled from reflection and with those of the generated descriptor.  The context converts each value once
+ * and keeps it, so after the first invocation this measures the setters alone; the parsed variants include
+ * parsing and converting a fresh command line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+	private final ArgumentParser _parser = new NativeArgumentParser();
+	private CommandSummary _reflective;
+	private CommandSummary _generated;
+	private CommandContext _reflectiveContext;
+	private CommandContext _generatedContext;
+
+	@Setup
+	public void setUp() throws Exception {
+		_reflective = BenchmarkCommands.reflective(BenchmarkCommands.Options.class);
+		_generated = BenchmarkCommands.options();
+		_reflectiveContext = new CommandContext(_parser.parse(_reflective, BenchmarkCommands.SHORT_LINE), _reflective);
+		_generatedContext = new CommandContext(_parser.parse(_generated, BenchmarkCommands.SHORT_LINE), _generated);
+	}
+
+	@Benchmark
+	public Command reflective() throws Exception {
+		return inject(_reflective, _reflectiveContext);
+	}
+
+	@Benchmark
+	public Command generated() throws Exception {
+		return inject(_generated, _generatedContext);
+	}
+
+	@Benchmark
+	public Command reflectiveParsed() throws Exception {
+		return inject(_reflective, new CommandContext(_parser.parse(_reflective, BenchmarkCommands.SHORT_LINE), _reflective));
+	}
+
+	@Benchmark
+	public Command generatedParsed() throws Exception {
+		return inject(_generated, new CommandContext(_parser.parse(_generated, BenchmarkCommands.SHORT_LINE), _generated));
+	}
+
+	private static Command inject(CommandSummary command, CommandContext context) throws Exception {
+		Command instance = command.getFactory().newInstance();
+		command.getInjector().inject(instance, context);
+		return instance;
+	}
+}
@@ -0,0 +1,67 @@
+package jpbetz.cli;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a command line and binding its values into a {@link CommandContext}, without converting them,
+ * with each {@link ArgumentParser}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+	private static final ArgumentParser NATIVE = new NativeArgumentParser();
+
+	@Param({ "commons", "native" })
+	String parser;
+
+	private ArgumentParser _parser;
+	private CommandSummary _options;
+	private CommandSummary _varargs;
+
+	@Setup
+	public void setUp() {
+		_parser = parser.equals("native") ? new NativeArgumentParser() : new CommonsArgumentParser();
+		_options = BenchmarkCommands.options();
+		_varargs = BenchmarkCommands.varargs();
+	}
+
+	@Benchmark
+	public CommandContext shortOptions() throws ParseException {
+		return new CommandContext(_parser.parse(_options, BenchmarkCommands.SHORT_LINE), _options);
+	}
+
+	@Benchmark
+	public CommandContext longOptions() throws ParseException {
+		return new CommandContext(_parser.parse(_options, BenchmarkCommands.LONG_LINE), _options);
+	}
+
+	@Benchmark
+	public CommandContext varargs() throws ParseException {
+		return new CommandContext(_parser.parse(_varargs, BenchmarkCommands.VARARG_LINE), _varargs);
+	}
+
+	/**
+	 * Clustered flags such as -avq, which only the native parser accepts, so both parameters run it.
+	 */
+	@Benchmark
+	public CommandContext clusteredFlags() throws ParseException {
+		return new CommandContext(NATIVE.parse(_options, BenchmarkCommands.CLUSTERED_LINE), _options);
+	}
+}
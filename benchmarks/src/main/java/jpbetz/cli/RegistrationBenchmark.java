@@ -0,0 +1,114 @@
+package jpbetz.cli;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registration of many commands, the work an application does before its first command line, by each of the
+ * ways a command may be registered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+	@Param({ "10", "100", "1000" })
+	int commands;
+
+	private String[] _names;
+	private String[] _classNames;
+
+	@Setup
+	public void setUp() {
+		_names = new String[commands];
+		_classNames = new String[commands];
+		for(int i = 0; i < commands; i++) {
+			_names[i] = "command" + i;
+			_classNames[i] = BenchmarkCommands.COMMANDS[i % BenchmarkCommands.COMMANDS.length].getName();
+		}
+	}
+
+	/**
+	 * Each command class read with reflection, as addSubCommands(Yell.class, ...) does.
+	 */
+	@Benchmark
+	public CommandSet reflective() {
+		CommandSet app = new CommandSet("benchmark");
+		for(int i = 0; i < commands; i++) {
+			app.addSubCommand(BenchmarkCommands.COMMANDS[i % BenchmarkCommands.COMMANDS.length]);
+		}
+		return app;
+	}
+
+	/**
+	 * Each command's summary created by its generated descriptor, the work done when it is first invoked.
+	 */
+	@Benchmark
+	public CommandSummary[] generated() {
+		CommandSummary[] summaries = new CommandSummary[commands];
+		for(int i = 0; i < commands; i++) {
+			summaries[i] = BenchmarkCommands.DESCRIPTORS[i % BenchmarkCommands.DESCRIPTORS.length].createSummary();
+		}
+		return summaries;
+	}
+
+	/**
+	 * Each command registered by name and class name, loaded only when invoked.
+	 */
+	@Benchmark
+	public CommandSet lazy() {
+		CommandSet app = new CommandSet("benchmark");
+		for(int i = 0; i < commands; i++) {
+			app.addSubCommand(_names[i], "A lazily loaded command", _classNames[i]);
+		}
+		return app;
+	}
+
+	/**
+	 * Each command registered lazily, then the last invoked, loading it.
+	 */
+	@Benchmark
+	public int lazyFirstInvoke() {
+		BenchmarkCommands.discardOutput(80);
+		CommandSet app = new CommandSet("benchmark");
+		for(int i = 0; i < commands; i++) {
+			final Class<? extends Command> commandClass = BenchmarkCommands.COMMANDS[0];
+			app.addSubCommand(_names[i], "A lazily loaded command", new Supplier<Command>() {
+				@Override
+				public Command get() {
+					try {
+						return commandClass.getDeclaredConstructor().newInstance();
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		}
+		return app.run(new String[] { _names[commands - 1], "name" });
+	}
+
+	/**
+	 * The commands listed in the META-INF/cli-util/commands index of the classpath, which does not depend on the
+	 * number of commands measured.
+	 */
+	@Benchmark
+	public CommandSet indexed() {
+		CommandSet app = new CommandSet("benchmark");
+		app.addIndexedSubCommands();
+		return app;
+	}
+}
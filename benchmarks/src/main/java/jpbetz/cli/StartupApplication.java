@@ -0,0 +1,89 @@
+package jpbetz.cli;
+
+import java.time.Instant;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * The application launched by {@link StartupBenchmark}, in a fresh JVM for every measurement.  It registers the
+ * generated commands in the given way, runs the last of them and prints, in microseconds since the epoch, when
+ * main was entered, registration completed, the command was found and loaded, its command line was parsed and
+ * its exec was entered.
+ *
+ * <pre>
+ *   java -cp &lt;generated jar&gt;:cli-util.jar:commons-cli.jar jpbetz.cli.StartupApplication &lt;mode&gt; &lt;commands&gt;
+ * </pre>
+ */
+public class StartupApplication {
+	static final String PACKAGE = "startup";
+	static final String REGISTRY = PACKAGE + ".Commands";
+	static final String[] MODES = { "reflective", "generated", "lazy", "indexed" };
+
+	private static long _loaded;
+	private static long _parsed;
+	private static long _executed;
+
+	public static void main(String[] args) throws Exception {
+		long main = now();
+		String mode = args[0];
+		int commands = Integer.parseInt(args[1]);
+
+		CommandSet app = new CommandSet("startup");
+		if(mode.equals("reflective")) {
+			for(int i = 0; i < commands; i++) {
+				app.addSubCommand(Class.forName(commandClass(i)).asSubclass(Command.class));
+			}
+		} else if(mode.equals("generated")) {
+			app.addSubCommands((CommandRegistry)Class.forName(REGISTRY).getDeclaredConstructor().newInstance());
+		} else if(mode.equals("lazy")) {
+			for(int i = 0; i < commands; i++) {
+				app.addSubCommand(commandName(i), "Generated command " + i, commandClass(i));
+			}
+		} else if(mode.equals("indexed")) {
+			app.addIndexedSubCommands();
+		} else {
+			throw new IllegalArgumentException("unknown mode " + mode);
+		}
+		long registered = now();
+
+		final ArgumentParser parser = new NativeArgumentParser();
+		app.setArgumentParser(new ArgumentParser() {
+			@Override
+			public ParsedCommandLine parse(CommandSummary command, String[] args) throws ParseException {
+				command.getOptions(); // loads a lazily registered command
+				_loaded = now();
+				ParsedCommandLine commandLine = parser.parse(command, args);
+				_parsed = now();
+				return commandLine;
+			}
+		});
+		int status = app.run(new String[] { commandName(commands - 1), "-c", "3", "-v", "name" });
+		if(status != 0 || _executed == 0) {
+			throw new IllegalStateException("command failed with status " + status);
+		}
+		System.out.println(main + " " + registered + " " + _loaded + " " + _parsed + " " + _executed);
+	}
+
+	/**
+	 * Called by the generated commands when their exec is entered.
+	 */
+	public static void executed() {
+		_executed = now();
+	}
+
+	static String commandName(int i) {
+		return "command" + i;
+	}
+
+	static String commandClass(int i) {
+		return PACKAGE + ".Command" + i;
+	}
+
+	/**
+	 * @return the wall clock time in microseconds, comparable between processes unlike System.nanoTime.
+	 */
+	static long now() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1000000L + now.getNano() / 1000;
+	}
+}
@@ -0,0 +1,302 @@
+package jpbetz.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures the time from launching a JVM to entering the exec method of a command, which JMH's steady state
+ * numbers do not capture.  For each number of commands it generates and compiles an application with that many
+ * {@link SubCommand}s, then launches {@link StartupApplication} many times in fresh JVMs for each way of
+ * registering them and reports percentiles of each phase.  The application is launched with only the generated jar and
+ * the cli-util and commons-cli jars copied to target/lib by the build, so the benchmark's own classes and command
+ * index are not registered with the generated ones.
+ *
+ * The phases are:
+ *
+ * <ul>
+ *   <li>boot: from launching the JVM to entering main</li>
+ *   <li>register: registering the commands with the {@link CommandSet}</li>
+ *   <li>load: finding the command invoked and, if registered lazily, building its summary</li>
+ *   <li>parse: parsing its command line</li>
+ *   <li>inject: creating the command and injecting its options and arguments, up to entering exec</li>
+ *   <li>total: from launching the JVM to entering exec</li>
+ * </ul>
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar jpbetz.cli.StartupBenchmark -n 10 -n 1000 -m lazy -r 50 --cds
+ * </pre>
+ */
+@SubCommand(name="startup", description="Measure the time from launching a JVM to the exec of a command")
+public class StartupBenchmark implements Command {
+	private static final String[] PHASES = { "boot", "register", "load", "parse", "inject", "total" };
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+	@Opt(opt="n", longOpt="commands", description="Number of commands registered, 10, 100 and 1000 by default")
+	int[] counts = { 10, 100, 1000 };
+
+	@Opt(opt="m", longOpt="mode", description="How commands are registered, reflective, generated, lazy or indexed, all by default")
+	String[] modes = StartupApplication.MODES;
+
+	@Opt(opt="r", longOpt="runs", description="Number of launches measured for each mode and number of commands")
+	int runs = 20;
+
+	@Opt(opt="w", longOpt="warmup", description="Number of launches discarded first, warming the file system cache")
+	int warmup = 2;
+
+	@Opt(opt="c", longOpt="cds", description="Launch with an application class data sharing archive dumped by a first launch")
+	boolean cds;
+
+	@Opt(opt="J", longOpt="jvm-arg", description="An option passed to every launched JVM")
+	String[] jvmArgs = {};
+
+	@Opt(opt="d", longOpt="directory", description="Directory the applications are generated in, target/startup by default")
+	File directory = new File("target/startup");
+
+	@Opt(opt="l", longOpt="lib", description="Directory of the cli-util and commons-cli jars the applications are launched with, target/lib by default")
+	File lib = new File("target/lib");
+
+	public static void main(String[] args) {
+		CommandSet app = new CommandSet("startup-benchmark");
+		app.addSubCommand(StartupBenchmark.class);
+		String[] line = new String[args.length + 1];
+		line[0] = "startup";
+		System.arraycopy(args, 0, line, 1, args.length);
+		System.exit(app.run(line));
+	}
+
+	@Override
+	public void exec(CommandContext commandLine) throws CommandError, Exception {
+		PrintStream out = CommandEnvironment.current().getOut();
+		out.printf("%-12s %8s %-10s %10s %10s %10s %10s%n", "mode", "commands", "phase", "p50 ms", "p90 ms", "p99 ms", "max ms");
+		for(int count : counts) {
+			File jar = generate(count);
+			for(String mode : modes) {
+				List<String> command = command(jar, mode, count);
+				long[][] phases = new long[PHASES.length][runs];
+				for(int run = -warmup; run < runs; run++) {
+					long[] times = launch(command);
+					if(run >= 0) {
+						for(int phase = 0; phase < PHASES.length; phase++) {
+							phases[phase][run] = times[phase];
+						}
+					}
+				}
+				for(int phase = 0; phase < PHASES.length; phase++) {
+					long[] times = phases[phase];
+					Arrays.sort(times);
+					out.printf("%-12s %8d %-10s", mode, count, PHASES[phase]);
+					for(double percentile : PERCENTILES) {
+						out.printf(" %10.2f", percentile(times, percentile) / 1000.0);
+					}
+					out.printf(" %10.2f%n", times[times.length - 1] / 1000.0);
+				}
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * @return the command launching the application, after dumping its class data sharing archive if enabled.
+	 */
+	private List<String> command(File jar, String mode, int count) throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(Arrays.asList(jvmArgs));
+		command.add("-cp");
+		command.add(classpath(jar));
+		command.add(StartupApplication.class.getName());
+		command.add(mode);
+		command.add(String.valueOf(count));
+		if(cds) {
+			File archive = new File(jar.getParentFile(), mode + ".jsa");
+			List<String> dump = new ArrayList<String>(command);
+			dump.add(1, "-XX:ArchiveClassesAtExit=" + archive.getPath());
+			Process process = new ProcessBuilder(dump).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			if(process.waitFor() != 0) {
+				throw new CommandError("unable to dump " + archive);
+			}
+			command.add(1, "-XX:SharedArchiveFile=" + archive.getPath());
+		}
+		return command;
+	}
+
+	/**
+	 * @return the generated jar followed by the jars in the lib directory.
+	 */
+	private String classpath(File jar) throws CommandError {
+		File[] jars = lib.listFiles();
+		if(jars == null || jars.length == 0) {
+			throw new CommandError("no cli-util and commons-cli jars in " + lib + ", build the benchmarks with mvn package");
+		}
+		Arrays.sort(jars);
+		StringBuilder classpath = new StringBuilder(jar.getPath());
+		for(File file : jars) {
+			if(file.getName().endsWith(".jar")) {
+				classpath.append(File.pathSeparator).append(file.getPath());
+			}
+		}
+		return classpath.toString();
+	}
+
+	/**
+	 * @return the duration of each phase of one launch, in microseconds.
+	 */
+	private static long[] launch(List<String> command) throws IOException, InterruptedException, CommandError {
+		ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+		long launched = StartupApplication.now();
+		Process process = builder.start();
+		// the JVM may log to stdout too, the times are the only line starting with a digit
+		String line = null;
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		try {
+			for(String output = in.readLine(); output != null; output = in.readLine()) {
+				if(!output.isEmpty() && Character.isDigit(output.charAt(0))) {
+					line = output;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		if(process.waitFor() != 0 || line == null) {
+			throw new CommandError("launch failed: " + String.join(" ", command));
+		}
+		String[] fields = line.trim().split(" ");
+		long[] marks = new long[fields.length + 1];
+		marks[0] = launched;
+		for(int i = 0; i < fields.length; i++) {
+			marks[i + 1] = Long.parseLong(fields[i]);
+		}
+		long[] times = new long[PHASES.length];
+		for(int phase = 0; phase < PHASES.length - 1; phase++) {
+			times[phase] = marks[phase + 1] - marks[phase];
+		}
+		times[PHASES.length - 1] = marks[marks.length - 1] - launched;
+		return times;
+	}
+
+	/**
+	 * @return the nearest rank percentile of the sorted times.
+	 */
+	private static long percentile(long[] times, double percentile) {
+		int rank = (int)Math.ceil(percentile * times.length);
+		return times[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Generates and compiles an application of the given number of commands, with the annotation processor, so
+	 * every way of registering them is available.
+	 *
+	 * @return the jar of the application.
+	 */
+	private File generate(int count) throws IOException, CommandError {
+		File root = new File(directory, "commands-" + count);
+		File sources = new File(root, "src/" + StartupApplication.PACKAGE);
+		File classes = new File(root, "classes");
+		if(!sources.isDirectory() && !sources.mkdirs() || !classes.isDirectory() && !classes.mkdirs()) {
+			throw new CommandError("unable to create " + root);
+		}
+		List<String> arguments = new ArrayList<String>(Arrays.asList(
+				"-d", classes.getPath(),
+				"-cp", System.getProperty("java.class.path"),
+				"-processor", "jpbetz.cli.processor.CommandProcessor",
+				"-Acliutil.registry=" + StartupApplication.REGISTRY,
+				"-nowarn"));
+		for(int i = 0; i < count; i++) {
+			File source = new File(sources, "Command" + i + ".java");
+			PrintWriter out = new PrintWriter(source, "UTF-8");
+			try {
+				out.println("package " + StartupApplication.PACKAGE + ";");
+				out.println();
+				out.println("@jpbetz.cli.SubCommand(name=\"" + StartupApplication.commandName(i) + "\", description=\"Generated command " + i + "\")");
+				out.println("public class Command" + i + " implements jpbetz.cli.Command {");
+				out.println("\t@jpbetz.cli.Arg(name=\"name\")");
+				out.println("\tString name;");
+				out.println();
+				out.println("\t@jpbetz.cli.Opt(opt=\"c\", longOpt=\"count\", description=\"A count\")");
+				out.println("\tint count;");
+				out.println();
+				out.println("\t@jpbetz.cli.Opt(opt=\"v\", longOpt=\"verbose\", description=\"A flag\")");
+				out.println("\tboolean verbose;");
+				out.println();
+				out.println("\t@Override");
+				out.println("\tpublic void exec(jpbetz.cli.CommandContext context) {");
+				out.println("\t\tjpbetz.cli.StartupApplication.executed();");
+				out.println("\t}");
+				out.println("}");
+			} finally {
+				out.close();
+			}
+			arguments.add(source.getPath());
+		}
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null || compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])) != 0) {
+			throw new CommandError("unable to compile the application of " + count + " commands");
+		}
+
+		// class data sharing only archives classes loaded from jars
+		File jar = new File(root, "commands.jar");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			addToJar(out, classes, "");
+			addStartupApplication(out);
+		} finally {
+			out.close();
+		}
+		return jar;
+	}
+
+	/**
+	 * Adds {@link StartupApplication} and its nested classes, which the launched JVM otherwise only finds in the
+	 * benchmarks jar.
+	 */
+	private static void addStartupApplication(JarOutputStream out) throws IOException {
+		String name = StartupApplication.class.getName().replace('.', '/');
+		out.putNextEntry(new JarEntry(name.substring(0, name.lastIndexOf('/') + 1)));
+		out.closeEntry();
+		for(int i = 0; ; i++) {
+			String entry = name + (i == 0 ? "" : "$" + i) + ".class";
+			InputStream in = StartupApplication.class.getClassLoader().getResourceAsStream(entry);
+			if(in == null) {
+				break;
+			}
+			try {
+				out.putNextEntry(new JarEntry(entry));
+				in.transferTo(out);
+				out.closeEntry();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	private static void addToJar(JarOutputStream out, File directory, String prefix) throws IOException {
+		for(File file : directory.listFiles()) {
+			if(file.isDirectory()) {
+				out.putNextEntry(new JarEntry(prefix + file.getName() + "/"));
+				addToJar(out, file, prefix + file.getName() + "/");
+			} else {
+				out.putNextEntry(new JarEntry(prefix + file.getName()));
+				Files.copy(file.toPath(), out);
+			}
+			out.closeEntry();
+		}
+	}
+}
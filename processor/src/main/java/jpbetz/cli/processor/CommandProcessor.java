@@ -0,0 +1,477 @@
+package jpbetz.cli.processor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+import jpbetz.cli.Arg;
+import jpbetz.cli.Opt;
+import jpbetz.cli.SubCommand;
+
+/**
+ * Generates a jpbetz.cli.CommandDescriptor for each class annotated with {@link SubCommand}, and a
+ * single jpbetz.cli.CommandRegistry listing all of them.
+ *
+ * The descriptor for a command named <code>com.example.Yell</code> is <code>com.example.Yell_CommandDescriptor</code>,
+ * it is also the jpbetz.cli.CommandFactory for the command.
+ * The registry defaults to <code>GeneratedCommandRegistry</code> in the package of the first command processed
+ * and may be named with the <code>-Acliutil.registry=com.example.Commands</code> compiler option.  It is listed in
+ * META-INF/services/jpbetz.cli.CommandRegistry.  The name, description and class of every command are also listed in
+ * the META-INF/cli-util/commands index, read by jpbetz.cli.CommandSet#addIndexedSubCommands() without loading any class.
+ * The registry, service file and index are written in the last round, once commands generated by other processors
+ * are known, so javac warns that the registry is not subject to annotation processing, see <code>-Xlint:-processing</code>.
+ *
+ * Generated setters assign fields directly, so annotated fields should not be private.  Private fields
+ * are still supported but fall back to reflection, and a warning is reported for each.
+ */
+@SupportedAnnotationTypes("jpbetz.cli.SubCommand")
+@SupportedOptions(CommandProcessor.REGISTRY_OPTION)
+public class CommandProcessor extends AbstractProcessor {
+	public static final String REGISTRY_OPTION = "cliutil.registry";
+	public static final String DESCRIPTOR_SUFFIX = "_CommandDescriptor";
+	public static final String DEFAULT_REGISTRY_NAME = "GeneratedCommandRegistry";
+
+	private static final String COMMAND_TYPE = "jpbetz.cli.Command";
+	private static final String REGISTRY_SERVICE = "META-INF/services/jpbetz.cli.CommandRegistry";
+	private static final String COMMAND_INDEX = "META-INF/cli-util/commands";
+
+	private final List<String> _descriptors = new ArrayList<String>();
+	private final List<String> _index = new ArrayList<String>();
+	private final List<Element> _originatingElements = new ArrayList<Element>();
+	private String _defaultRegistryPackage;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for(Element element : roundEnv.getElementsAnnotatedWith(SubCommand.class)) {
+			if(element.getKind() != ElementKind.CLASS) {
+				error(element, "@SubCommand may only annotate classes");
+				continue;
+			}
+			TypeElement type = (TypeElement)element;
+			if(!isValidCommand(type)) {
+				continue;
+			}
+			try {
+				writeDescriptor(type);
+			} catch (IOException e) {
+				error(type, "unable to write command descriptor: " + e.getMessage());
+			}
+		}
+
+		// written once every round has run, so commands generated by other processors in later rounds are listed too.
+		// javac still compiles a source created in the last round, it only no longer processes its annotations
+		if(roundEnv.processingOver() && !_descriptors.isEmpty()) {
+			try {
+				writeRegistry();
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "unable to write command registry: " + e.getMessage());
+			}
+		}
+		return false;
+	}
+
+	private boolean isValidCommand(TypeElement type) {
+		TypeElement commandType = processingEnv.getElementUtils().getTypeElement(COMMAND_TYPE);
+		if(commandType == null || !processingEnv.getTypeUtils().isAssignable(type.asType(), commandType.asType())) {
+			error(type, "@SubCommand class must implement " + COMMAND_TYPE);
+			return false;
+		}
+		if(type.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(type, "@SubCommand class must not be abstract");
+			return false;
+		}
+		if(type.getModifiers().contains(Modifier.PRIVATE)) {
+			error(type, "@SubCommand class must not be private");
+			return false;
+		}
+		if(type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+			error(type, "nested @SubCommand class must be static");
+			return false;
+		}
+
+		boolean hasConstructor = false;
+		for(ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if(constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				hasConstructor = true;
+			}
+		}
+		if(!hasConstructor) {
+			error(type, "@SubCommand class must have a non-private no argument constructor");
+			return false;
+		}
+
+		for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if(field.getAnnotation(Opt.class) == null && field.getAnnotation(Arg.class) == null) {
+				continue;
+			}
+			if(field.getAnnotation(Opt.class) != null && field.getAnnotation(Arg.class) != null) {
+				error(field, "field " + field.getSimpleName() + " has both @Arg and @Opt annotations, only one is allowed per field.");
+				return false;
+			}
+			if(field.getModifiers().contains(Modifier.FINAL)) {
+				error(field, "field " + field.getSimpleName() + " must not be final");
+				return false;
+			}
+			if(field.getModifiers().contains(Modifier.PRIVATE)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"private field " + field.getSimpleName() + " will be set using reflection, make it package private to avoid this", field);
+			}
+		}
+		return true;
+	}
+
+	private void writeDescriptor(TypeElement type) throws IOException {
+		String packageName = getPackageName(type);
+		String commandName = type.getQualifiedName().toString();
+		String descriptorName = getDescriptorName(type);
+		String qualifiedDescriptorName = packageName.isEmpty() ? descriptorName : packageName + "." + descriptorName;
+		SubCommand subCommand = type.getAnnotation(SubCommand.class);
+
+		List<VariableElement> setterFields = new ArrayList<VariableElement>();
+
+		Writer writer = processingEnv.getFiler().createSourceFile(qualifiedDescriptorName, type).openWriter();
+		PrintWriter out = new PrintWriter(writer);
+		try {
+			if(!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * Generated by " + getClass().getName() + " from {@link " + commandName + "}.  Do not edit.");
+			out.println(" */");
+			out.println("public final class " + descriptorName + " implements jpbetz.cli.CommandDescriptor, jpbetz.cli.CommandFactory {");
+			out.println("\t@Override");
+			out.println("\tpublic String getName() {");
+			out.println("\t\treturn " + literal(subCommand.name()) + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getDescription() {");
+			out.println("\t\treturn " + literal(subCommand.description()) + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic jpbetz.cli.Command newInstance() {");
+			out.println("\t\treturn new " + commandName + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic jpbetz.cli.CommandSummary createSummary() {");
+			out.println("\t\torg.apache.commons.cli.Options options = new org.apache.commons.cli.Options();");
+			out.println("\t\tjava.util.Map<org.apache.commons.cli.Option, jpbetz.cli.FieldSetter> optionSetters = new java.util.HashMap<org.apache.commons.cli.Option, jpbetz.cli.FieldSetter>();");
+			out.println("\t\tjpbetz.cli.Arguments args = new jpbetz.cli.Arguments();");
+			out.println("\t\torg.apache.commons.cli.Option option;");
+
+			for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				Opt opt = field.getAnnotation(Opt.class);
+				Arg arg = field.getAnnotation(Arg.class);
+				if(opt == null && arg == null) {
+					continue;
+				}
+
+				String setter;
+				if(field.getModifiers().contains(Modifier.PRIVATE)) {
+					setter = "reflectiveSetter(" + literal(field.getSimpleName().toString()) + ")";
+				} else {
+					setter = "new Setter(" + setterFields.size() + ")";
+					setterFields.add(field);
+				}
+
+				out.println();
+				TypeMirror fieldType = field.asType();
+				if(opt != null) {
+					boolean hasArg = !(fieldType.getKind() == TypeKind.BOOLEAN || isType(fieldType, "java.lang.Boolean"));
+					String longOpt = opt.longOpt().trim().equals("") ? "null" : literal(opt.longOpt());
+					out.println("\t\toption = new org.apache.commons.cli.Option(" + literal(opt.opt()) + ", " + longOpt + ", " + hasArg + ", " + literal(opt.description()) + ");");
+					if(hasArg) {
+						TypeMirror valueType = fieldType.getKind() == TypeKind.ARRAY ? ((ArrayType)fieldType).getComponentType() : fieldType;
+						String argName = opt.argName().trim().equals("") ? getSimpleName(valueType).toLowerCase() : opt.argName();
+						out.println("\t\toption.setArgName(" + literal(argName) + ");");
+					}
+					out.println("\t\toption.setRequired(" + opt.required() + ");");
+					out.println("\t\toption.setType(" + classLiteral(fieldType) + ");");
+					out.println("\t\toptions.addOption(option);");
+					out.println("\t\toptionSetters.put(option, " + setter + ");");
+				} else {
+					String argType = arg.isVararg() ? classLiteral(getVarargType(field)) : classLiteral(fieldType);
+					out.println("\t\targs.addArgument(jpbetz.cli.ArgumentBuilder.newBuilder(" + setter + ")");
+					out.println("\t\t\t\t.withArgName(" + literal(arg.name()) + ")");
+					out.println("\t\t\t\t.isVararg(" + arg.isVararg() + ")");
+					out.println("\t\t\t\t.isRequired(" + !arg.optional() + ")");
+					out.println("\t\t\t\t.withType(" + argType + ")");
+					out.println("\t\t\t\t.withFieldType(" + classLiteral(fieldType) + ")");
+					out.println("\t\t\t\t.create());");
+				}
+			}
+
+			out.println();
+			out.println("\t\treturn new jpbetz.cli.CommandSummary(this, getName(), getDescription(), options, args, new jpbetz.cli.FieldInjector(args, optionSetters));");
+			out.println("\t}");
+			out.println();
+			out.println("\tprivate static jpbetz.cli.FieldSetter reflectiveSetter(String fieldName) {");
+			out.println("\t\ttry {");
+			out.println("\t\t\treturn new jpbetz.cli.ReflectiveFieldSetter(" + commandName + ".class, fieldName);");
+			out.println("\t\t} catch (NoSuchFieldException e) {");
+			out.println("\t\t\tthrow new IllegalStateException(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tprivate static final class Setter implements jpbetz.cli.FieldSetter {");
+			out.println("\t\tprivate final int _slot;");
+			out.println();
+			out.println("\t\tSetter(int slot) {");
+			out.println("\t\t\t_slot = slot;");
+			out.println("\t\t}");
+			out.println();
+			out.println("\t\t@Override");
+			out.println("\t\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("\t\tpublic void set(jpbetz.cli.Command instance, Object value) {");
+			out.println("\t\t\t" + commandName + " command = (" + commandName + ")instance;");
+			out.println("\t\t\tswitch(_slot) {");
+			for(int slot = 0; slot < setterFields.size(); slot++) {
+				VariableElement field = setterFields.get(slot);
+				out.println("\t\t\tcase " + slot + ": command." + field.getSimpleName() + " = (" + castType(field.asType()) + ")value; break;");
+			}
+			out.println("\t\t\tdefault: throw new IllegalArgumentException(\"no field for slot \" + _slot);");
+			out.println("\t\t\t}");
+			out.println("\t\t}");
+			writePrimitiveSetter(out, commandName, setterFields, TypeKind.BOOLEAN, "setBoolean", "boolean");
+			writePrimitiveSetter(out, commandName, setterFields, TypeKind.INT, "setInt", "int");
+			writePrimitiveSetter(out, commandName, setterFields, TypeKind.LONG, "setLong", "long");
+			writePrimitiveSetter(out, commandName, setterFields, TypeKind.DOUBLE, "setDouble", "double");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+
+		_descriptors.add(qualifiedDescriptorName);
+		_index.add(escape(subCommand.name()) + "\t" + escape(subCommand.description()) + "\t"
+				+ processingEnv.getElementUtils().getBinaryName(type) + "\t" + qualifiedDescriptorName);
+		_originatingElements.add(type);
+		if(_defaultRegistryPackage == null) {
+			_defaultRegistryPackage = packageName;
+		}
+	}
+
+	/**
+	 * Writes an override of a primitive setter that assigns the fields of the given kind without boxing.
+	 */
+	private void writePrimitiveSetter(PrintWriter out, String commandName, List<VariableElement> setterFields, TypeKind kind, String method, String type) {
+		List<Integer> slots = new ArrayList<Integer>();
+		for(int slot = 0; slot < setterFields.size(); slot++) {
+			if(setterFields.get(slot).asType().getKind() == kind) {
+				slots.add(slot);
+			}
+		}
+		if(slots.isEmpty()) {
+			return;
+		}
+		out.println();
+		out.println("\t\t@Override");
+		out.println("\t\tpublic void " + method + "(jpbetz.cli.Command instance, " + type + " value) {");
+		out.println("\t\t\t" + commandName + " command = (" + commandName + ")instance;");
+		out.println("\t\t\tswitch(_slot) {");
+		for(int slot : slots) {
+			out.println("\t\t\tcase " + slot + ": command." + setterFields.get(slot).getSimpleName() + " = value; break;");
+		}
+		out.println("\t\t\tdefault: set(instance, value);");
+		out.println("\t\t\t}");
+		out.println("\t\t}");
+	}
+
+	private void writeRegistry() throws IOException {
+		String registryName = processingEnv.getOptions().get(REGISTRY_OPTION);
+		if(registryName == null || registryName.trim().equals("")) {
+			registryName = _defaultRegistryPackage.isEmpty() ? DEFAULT_REGISTRY_NAME : _defaultRegistryPackage + "." + DEFAULT_REGISTRY_NAME;
+		}
+		int lastDot = registryName.lastIndexOf('.');
+		String packageName = lastDot < 0 ? "" : registryName.substring(0, lastDot);
+		String simpleName = registryName.substring(lastDot + 1);
+		Element[] originatingElements = _originatingElements.toArray(new Element[_originatingElements.size()]);
+
+		PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(registryName, originatingElements).openWriter());
+		try {
+			if(!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * Generated by " + getClass().getName() + ".  Do not edit.");
+			out.println(" */");
+			out.println("public final class " + simpleName + " implements jpbetz.cli.CommandRegistry {");
+			out.println("\t@Override");
+			out.println("\tpublic java.util.List<jpbetz.cli.CommandDescriptor> getDescriptors() {");
+			out.println("\t\treturn java.util.Arrays.<jpbetz.cli.CommandDescriptor>asList(");
+			for(int i = 0; i < _descriptors.size(); i++) {
+				out.println("\t\t\t\tnew " + _descriptors.get(i) + "()" + (i < _descriptors.size() - 1 ? "," : ");"));
+			}
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+
+		PrintWriter services = new PrintWriter(processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY_SERVICE, originatingElements).openWriter());
+		try {
+			services.println(registryName);
+		} finally {
+			services.close();
+		}
+
+		PrintWriter index = new PrintWriter(new OutputStreamWriter(processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", COMMAND_INDEX, originatingElements).openOutputStream(), StandardCharsets.UTF_8));
+		try {
+			index.println("# name\tdescription\tclass\tdescriptor, generated by " + getClass().getName());
+			for(String command : _index) {
+				index.println(command);
+			}
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * @return the text with tabs, newlines and backslashes escaped for a field of the command index.
+	 */
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "");
+	}
+
+	/**
+	 * @return the type of each value of a vararg, the component type of an array field or the type parameter
+	 * of an Iterable field unless the annotation gives another, as CommandSet.varargType does.
+	 */
+	private TypeMirror getVarargType(VariableElement field) {
+		TypeMirror argType = getArgType(field);
+		if(isType(argType, "java.lang.String") && field.asType().getKind() == TypeKind.ARRAY) {
+			return ((ArrayType)field.asType()).getComponentType();
+		}
+		if(isType(argType, "java.lang.String") && isType(field.asType(), "java.lang.Iterable")) {
+			List<? extends TypeMirror> typeArguments = ((DeclaredType)field.asType()).getTypeArguments();
+			if(typeArguments.size() == 1 && typeArguments.get(0).getKind() == TypeKind.DECLARED) {
+				return typeArguments.get(0);
+			}
+		}
+		return argType;
+	}
+	
+	private TypeMirror getArgType(VariableElement field) {
+		for(AnnotationMirror mirror : field.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement)mirror.getAnnotationType().asElement();
+			if(!annotationType.getQualifiedName().contentEquals(Arg.class.getName())) {
+				continue;
+			}
+			for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+				if(entry.getKey().getSimpleName().contentEquals("type")) {
+					return (TypeMirror)entry.getValue().getValue();
+				}
+			}
+		}
+		return processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+	}
+
+	private String getPackageName(TypeElement type) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+	}
+
+	/**
+	 * @return the descriptor's simple name, nested classes are flattened: Outer.Inner becomes Outer_Inner_CommandDescriptor.
+	 */
+	static String getDescriptorName(TypeElement type) {
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		Element enclosing = type.getEnclosingElement();
+		while(enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+			name.insert(0, enclosing.getSimpleName() + "_");
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name.append(DESCRIPTOR_SUFFIX).toString();
+	}
+
+	private boolean isType(TypeMirror type, String qualifiedName) {
+		return type.getKind() == TypeKind.DECLARED
+				&& ((TypeElement)((DeclaredType)type).asElement()).getQualifiedName().contentEquals(qualifiedName);
+	}
+
+	private String classLiteral(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString() + ".class";
+	}
+
+	private String castType(TypeMirror type) {
+		if(type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).getQualifiedName().toString();
+		}
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	/**
+	 * @return the same name as Class.getSimpleName() would for the field type at runtime.
+	 */
+	private String getSimpleName(TypeMirror type) {
+		if(type.getKind() == TypeKind.ARRAY) {
+			return getSimpleName(((ArrayType)type).getComponentType()) + "[]";
+		} else if(type.getKind() == TypeKind.DECLARED) {
+			return ((DeclaredType)type).asElement().getSimpleName().toString();
+		} else {
+			return type.toString();
+		}
+	}
+
+	static String literal(String value) {
+		StringBuilder builder = new StringBuilder("\"");
+		for(char c : value.toCharArray()) {
+			switch(c) {
+			case '"': builder.append("\\\""); break;
+			case '\\': builder.append("\\\\"); break;
+			case '\n': builder.append("\\n"); break;
+			case '\r': builder.append("\\r"); break;
+			case '\t': builder.append("\\t"); break;
+			default:
+				if(c < 0x20) {
+					builder.append(String.format("\\u%04x", (int)c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,117 @@
+package jpbetz.cli.processor;
+
+import java.io.File;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import jpbetz.cli.Arg;
+import jpbetz.cli.Command;
+import jpbetz.cli.CommandContext;
+import jpbetz.cli.CommandDescriptor;
+import jpbetz.cli.CommandError;
+import jpbetz.cli.CommandRegistry;
+import jpbetz.cli.CommandSet;
+import jpbetz.cli.CommandSummary;
+import jpbetz.cli.Opt;
+import jpbetz.cli.SubCommand;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verify the descriptors generated for the commands below build working {@link CommandSummary}s.
+ */
+public class ProcessorTests extends TestCase {
+	
+	@SubCommand(name="generated", description="A \"generated\" command")
+	public static class Generated implements Command {
+		@Arg(name="arg1")
+		String arg1;
+		
+		@Arg(name="arg2")
+		private File arg2; // intentionally private, falls back to a reflective setter
+		
+		@Arg(name="rest", optional=true, isVararg=true)
+		List<String> rest;
+		
+		@Opt(opt="n", longOpt="number", description="A number")
+		Number number = 1;
+		
+		@Opt(opt="f", longOpt="flag", description="A flag")
+		boolean hasFlag;
+		
+		@Opt(opt="c", longOpt="count", description="A count")
+		int count;
+		
+		@Opt(opt="r", longOpt="ratio", description="A ratio")
+		double ratio;
+		
+		@Opt(opt="i", longOpt="id", description="Ids")
+		long[] ids;
+		
+		static Generated lastRun;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			lastRun = this;
+		}
+	}
+	
+	public ProcessorTests(String testName) {
+		super(testName);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(ProcessorTests.class);
+	}
+	
+	public void testDescriptor() {
+		CommandDescriptor descriptor = new ProcessorTests_Generated_CommandDescriptor();
+		assertEquals("generated", descriptor.getName());
+		assertEquals("A \"generated\" command", descriptor.getDescription());
+		
+		CommandSummary summary = descriptor.createSummary();
+		assertEquals(3, summary.getArgs().getArguments().size());
+		assertTrue(summary.getOptions().hasOption("n"));
+		assertTrue(summary.getOptions().getOption("number").hasArg());
+		assertFalse(summary.getOptions().getOption("f").hasArg());
+		assertEquals("number", summary.getOptions().getOption("n").getArgName());
+	}
+	
+	public void testRegistry() {
+		boolean found = false;
+		for(CommandRegistry registry : ServiceLoader.load(CommandRegistry.class)) {
+			for(CommandDescriptor descriptor : registry.getDescriptors()) {
+				found |= descriptor instanceof ProcessorTests_Generated_CommandDescriptor;
+			}
+		}
+		assertTrue(found);
+	}
+	
+	public void testIndex() {
+		CommandSet app = new CommandSet("test-app");
+		app.addIndexedSubCommands();
+		Generated.lastRun = null;
+		app.invoke("generated text out.txt".split("\\s+"));
+		assertNotNull(Generated.lastRun);
+		assertEquals("text", Generated.lastRun.arg1);
+	}
+	
+	public void testInvoke() {
+		CommandSet app = new CommandSet("test-app");
+		app.addRegisteredSubCommands();
+		app.invoke("generated -f -n 3 -c 4 -r 1.5 -i 7 -i 8 text out.txt a b".split("\\s+"));
+		
+		Generated command = Generated.lastRun;
+		assertNotNull(command);
+		assertEquals("text", command.arg1);
+		assertEquals(new File("out.txt"), command.arg2);
+		assertEquals(2, command.rest.size());
+		assertEquals(3, command.number.intValue());
+		assertTrue(command.hasFlag);
+		assertEquals(4, command.count);
+		assertEquals(1.5, command.ratio);
+		assertEquals(2, command.ids.length);
+		assertEquals(8L, command.ids[1]);
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Runs a command line on a jpbetz.cli.CommandServer without starting a JVM, speaking the same wire format
+ * as jpbetz.cli.CommandClient, see jpbetz.cli.DaemonProtocol:
+ *
+ *   cc -O2 -o cli-client src/main/c/cli-client.c
+ *   ./cli-client /tmp/bullhorn.sock yell -n 3 hello
+ *
+ * A child process forwards stdin as STDIN frames while the parent copies STDOUT and STDERR frames back
+ * and exits with the status of the EXIT frame.
+ */
+#include <arpa/inet.h>
+#include <errno.h>
+#include <limits.h>
+#include <signal.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+#define BUFFER_SIZE (64 * 1024)
+
+#define STDIN_FRAME 'I'
+#define STDOUT_FRAME 'O'
+#define STDERR_FRAME 'E'
+#define EXIT_FRAME 'X'
+
+extern char **environ;
+
+static int write_fully(int fd, const void *buffer, size_t length) {
+	const char *p = buffer;
+	while(length > 0) {
+		ssize_t written = write(fd, p, length);
+		if(written < 0) {
+			if(errno == EINTR) continue;
+			return -1;
+		}
+		p += written;
+		length -= written;
+	}
+	return 0;
+}
+
+static int read_fully(int fd, void *buffer, size_t length) {
+	char *p = buffer;
+	while(length > 0) {
+		ssize_t read_count = read(fd, p, length);
+		if(read_count < 0) {
+			if(errno == EINTR) continue;
+			return -1;
+		}
+		if(read_count == 0) return -1;
+		p += read_count;
+		length -= read_count;
+	}
+	return 0;
+}
+
+static int write_int(FILE *out, uint32_t value) {
+	uint32_t network = htonl(value);
+	return fwrite(&network, sizeof(network), 1, out) == 1 ? 0 : -1;
+}
+
+static int write_bytes(FILE *out, const char *value, size_t length) {
+	if(write_int(out, (uint32_t)length) < 0) return -1;
+	return fwrite(value, 1, length, out) == length ? 0 : -1;
+}
+
+static int write_string(FILE *out, const char *value) {
+	return write_bytes(out, value, strlen(value));
+}
+
+/* Sends the arguments, working directory and environment. */
+static int write_header(int fd, int argc, char **argv) {
+	FILE *out = fdopen(dup(fd), "w");
+	char cwd[PATH_MAX];
+	int env_count = 0;
+	char **env;
+	int i;
+
+	if(out == NULL) return -1;
+	if(getcwd(cwd, sizeof(cwd)) == NULL) {
+		fclose(out);
+		return -1;
+	}
+	for(env = environ; *env != NULL; env++) {
+		if(strchr(*env, '=') != NULL) env_count++;
+	}
+
+	write_int(out, (uint32_t)argc);
+	for(i = 0; i < argc; i++) {
+		write_string(out, argv[i]);
+	}
+	write_string(out, cwd);
+	write_int(out, (uint32_t)env_count);
+	for(env = environ; *env != NULL; env++) {
+		char *separator = strchr(*env, '=');
+		if(separator == NULL) continue;
+		write_bytes(out, *env, separator - *env);
+		write_string(out, separator + 1);
+	}
+	return fclose(out) == 0 ? 0 : -1;
+}
+
+static void write_frame_header(char *header, char type, uint32_t length) {
+	uint32_t network = htonl(length);
+	header[0] = type;
+	memcpy(header + 1, &network, sizeof(network));
+}
+
+/* Forwards stdin until it ends, then sends the empty frame. Runs in the child process. */
+static void pump_stdin(int fd) {
+	char buffer[BUFFER_SIZE];
+	char header[5];
+	ssize_t read_count;
+
+	while((read_count = read(STDIN_FILENO, buffer, sizeof(buffer))) != 0) {
+		if(read_count < 0) {
+			if(errno == EINTR) continue;
+			break;
+		}
+		write_frame_header(header, STDIN_FRAME, (uint32_t)read_count);
+		if(write_fully(fd, header, sizeof(header)) < 0 || write_fully(fd, buffer, read_count) < 0) {
+			/* the server finished the command and closed the connection */
+			return;
+		}
+	}
+	write_frame_header(header, STDIN_FRAME, 0);
+	write_fully(fd, header, sizeof(header));
+}
+
+/* Copies frames to stdout and stderr until the exit frame, returning its status. */
+static int copy_output(int fd) {
+	char buffer[BUFFER_SIZE];
+	char type;
+	uint32_t length;
+
+	while(1) {
+		if(read_fully(fd, &type, 1) < 0 || read_fully(fd, &length, sizeof(length)) < 0) {
+			fprintf(stderr, "cli-client: connection closed by server\n");
+			return 1;
+		}
+		length = ntohl(length);
+		if(type == EXIT_FRAME) {
+			return (int)length;
+		}
+		while(length > 0) {
+			size_t chunk = length < sizeof(buffer) ? length : sizeof(buffer);
+			if(read_fully(fd, buffer, chunk) < 0) {
+				fprintf(stderr, "cli-client: connection closed by server\n");
+				return 1;
+			}
+			write_fully(type == STDERR_FRAME ? STDERR_FILENO : STDOUT_FILENO, buffer, chunk);
+			length -= chunk;
+		}
+	}
+}
+
+int main(int argc, char **argv) {
+	struct sockaddr_un address;
+	pid_t pump;
+	int fd;
+	int status;
+
+	if(argc < 2) {
+		fprintf(stderr, "usage: cli-client <socket> [<args>]\n");
+		return 2;
+	}
+	if(strlen(argv[1]) >= sizeof(address.sun_path)) {
+		fprintf(stderr, "cli-client: socket path too long: %s\n", argv[1]);
+		return 2;
+	}
+	signal(SIGPIPE, SIG_IGN);
+
+	fd = socket(AF_UNIX, SOCK_STREAM, 0);
+	if(fd < 0) {
+		perror("cli-client: socket");
+		return 1;
+	}
+	memset(&address, 0, sizeof(address));
+	address.sun_family = AF_UNIX;
+	strcpy(address.sun_path, argv[1]);
+	if(connect(fd, (struct sockaddr *)&address, sizeof(address)) < 0) {
+		fprintf(stderr, "cli-client: %s: %s\n", argv[1], strerror(errno));
+		return 1;
+	}
+	if(write_header(fd, argc - 2, argv + 2) < 0) {
+		perror("cli-client: sending command line");
+		return 1;
+	}
+
+	pump = fork();
+	if(pump < 0) {
+		perror("cli-client: fork");
+		return 1;
+	}
+	if(pump == 0) {
+		pump_stdin(fd);
+		_exit(0);
+	}
+
+	status = copy_output(fd);
+	/* the command may have returned without reading all of stdin */
+	kill(pump, SIGTERM);
+	waitpid(pump, NULL, 0);
+	close(fd);
+	return status;
+}
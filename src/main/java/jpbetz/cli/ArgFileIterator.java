@@ -0,0 +1,105 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over positional arguments, replacing each "@path" argument with the lines of the file, one
+ * argument per line, read as they are iterated.  "@-" reads the lines of stdin, and "@@" escapes an argument
+ * that starts with "@".  Empty lines are skipped, and lines are not themselves expanded.
+ *
+ * A file is closed once its last line is read, or by {@link #close()} if iteration stops early.  Errors
+ * opening or reading a file are thrown as {@link UncheckedIOException}.
+ */
+class ArgFileIterator implements Iterator<String>, AutoCloseable {
+	private final Iterator<String> _args;
+	private final CommandEnvironment _environment;
+	private ReadableByteChannel _channel;
+	private RecordReader _lines;
+	private String _next;
+
+	ArgFileIterator(Iterator<String> args, CommandEnvironment environment) {
+		_args = args;
+		_environment = environment;
+	}
+
+	/**
+	 * @return true if any of the arguments is to be expanded.
+	 */
+	static boolean hasArgFile(Iterable<String> args) {
+		for(String arg : args) {
+			if(arg.length() > 1 && arg.charAt(0) == '@') return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while(_next == null) {
+			if(_lines != null) {
+				if(_lines.hasNext()) {
+					String line = _lines.next();
+					if(!line.isEmpty()) {
+						_next = line;
+					}
+				} else {
+					close();
+				}
+			} else if(_args.hasNext()) {
+				String arg = _args.next();
+				if(arg.startsWith("@@")) {
+					_next = arg.substring(1);
+				} else if(arg.length() > 1 && arg.charAt(0) == '@') {
+					open(arg.substring(1));
+				} else {
+					_next = arg;
+				}
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String next = _next;
+		_next = null;
+		return next;
+	}
+
+	private void open(String path) {
+		if(path.equals("-")) {
+			_channel = _environment.getInChannel();
+		} else {
+			try {
+				_channel = FileChannel.open(new File(_environment.resolvePath(path)).toPath(), StandardOpenOption.READ);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read argument file " + path + ": " + e.getMessage(), e);
+			}
+		}
+		_lines = RecordReader.lines(_channel);
+	}
+
+	@Override
+	public void close() {
+		if(_channel != null) {
+			try {
+				_channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		_channel = null;
+		_lines = null;
+	}
+}
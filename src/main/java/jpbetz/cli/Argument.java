@@ -14,6 +14,8 @@ public class Argument {
 	private final boolean _isRequired;
 	private final boolean _isVararg;
 	private Field _field;
+	private FieldSetter _setter;
+	private Class<?> _fieldType;
 	
 	public Argument(Field field, Object type) {
 		this(field, null, type, true, false);
@@ -24,7 +26,20 @@ public class Argument {
 	}
 
 	public Argument(Field field, String argName, Object type, boolean isRequired, boolean isVararg) {
+		this(field == null ? null : new ReflectiveFieldSetter(field), field == null ? null : field.getType(), argName, type, isRequired, isVararg);
 		_field = field;
+	}
+	
+	public Argument(FieldSetter setter, String argName, Object type, boolean isRequired, boolean isVararg) {
+		this(setter, null, argName, type, isRequired, isVararg);
+	}
+	
+	/**
+	 * @param fieldType type of the field set, which may differ from the type of each value for a vararg.
+	 */
+	public Argument(FieldSetter setter, Class<?> fieldType, String argName, Object type, boolean isRequired, boolean isVararg) {
+		_setter = setter;
+		_fieldType = fieldType;
 		_argName = argName;
 		_type = type;
 		_isRequired = isRequired;
@@ -35,6 +50,17 @@ public class Argument {
 	  return _field;
   }
 	
+	/**
+	 * @return the type of the field set, or null if not known.
+	 */
+	public Class<?> getFieldType() {
+		return _fieldType;
+	}
+	
+	public FieldSetter getSetter() {
+		return _setter;
+	}
+	
 	public boolean hasArgName() {
 		return _argName != null;
 	}
@@ -4,6 +4,8 @@ import java.lang.reflect.Field;
 
 public class ArgumentBuilder {
 	private Field _field;
+	private FieldSetter _setter;
+	private Class<?> _fieldType;
 	private String _argName;
 	private Object _type;
 	private boolean _isRequired = true;
@@ -13,9 +15,17 @@ public class ArgumentBuilder {
 		_field = field;
 	}
 	
+	public ArgumentBuilder(FieldSetter setter) {
+		_setter = setter;
+	}
+	
 	public static ArgumentBuilder newBuilder(Field field) {
 		return new ArgumentBuilder(field);
 	}
+	
+	public static ArgumentBuilder newBuilder(FieldSetter setter) {
+		return new ArgumentBuilder(setter);
+	}
 
 	public ArgumentBuilder withArgName(String argName) {
 		_argName = argName;
@@ -27,6 +37,14 @@ public class ArgumentBuilder {
 		return this;
 	}
 	
+	/**
+	 * Sets the type of the field set through a {@link FieldSetter}, needed to bind varargs to arrays.
+	 */
+	public ArgumentBuilder withFieldType(Class<?> fieldType) {
+		_fieldType = fieldType;
+		return this;
+	}
+	
 	public ArgumentBuilder isRequired(boolean isRequired) {
 		_isRequired = isRequired;
 		return this;
@@ -38,6 +56,9 @@ public class ArgumentBuilder {
 	}
 	
 	public Argument create() {
-		return new Argument(_field, _argName, _type, _isRequired, _isVararg);
+		if(_field != null) {
+			return new Argument(_field, _argName, _type, _isRequired, _isVararg);
+		}
+		return new Argument(_setter, _fieldType, _argName, _type, _isRequired, _isVararg);
 	}
 }
@@ -0,0 +1,52 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * How the positional arguments of an invocation are expanded before they are bound, set on a
+ * {@link CommandSet}.  Immutable, each setting returns a copy.
+ */
+final class ArgumentExpansion {
+	static final ArgumentExpansion NONE = new ArgumentExpansion(false, false, 1000000);
+
+	private final boolean _isExpandingArgFiles;
+	private final boolean _isExpandingGlobs;
+	private final int _maxGlobMatches;
+
+	private ArgumentExpansion(boolean isExpandingArgFiles, boolean isExpandingGlobs, int maxGlobMatches) {
+		_isExpandingArgFiles = isExpandingArgFiles;
+		_isExpandingGlobs = isExpandingGlobs;
+		_maxGlobMatches = maxGlobMatches;
+	}
+
+	ArgumentExpansion withArgFiles(boolean isEnabled) {
+		return new ArgumentExpansion(isEnabled, _isExpandingGlobs, _maxGlobMatches);
+	}
+
+	ArgumentExpansion withGlobs(boolean isEnabled) {
+		return new ArgumentExpansion(_isExpandingArgFiles, isEnabled, _maxGlobMatches);
+	}
+
+	ArgumentExpansion withMaxGlobMatches(int maxGlobMatches) {
+		return new ArgumentExpansion(_isExpandingArgFiles, _isExpandingGlobs, maxGlobMatches);
+	}
+
+	boolean isExpandingArgFiles() {
+		return _isExpandingArgFiles;
+	}
+
+	/**
+	 * @return true if patterns given to the vararg of the layout are expanded, only File and Path varargs are.
+	 */
+	boolean isExpandingGlobs(ArgumentLayout layout) {
+		if(!_isExpandingGlobs || !layout.hasVararg()) return false;
+		Object type = layout.getArgument(layout.getVarargSlot()).getType();
+		return type == File.class || type == Path.class;
+	}
+
+	GlobIterator expandGlobs(Iterator<String> values, CommandEnvironment environment) {
+		return new GlobIterator(values, environment, _maxGlobMatches);
+	}
+}
@@ -0,0 +1,103 @@
+package jpbetz.cli;
+
+import java.util.Collection;
+
+/**
+ * The positional layout of a command's {@link Arguments}, compiled once when the command is registered.
+ * 
+ * Each argument has a slot, its position on the command line.  Arguments before the vararg, if any, take 
+ * one value each, and a vararg takes every value from its slot on.  Binding a command line is then a
+ * single pass over the values into an array of {@link #size()} slots.
+ */
+public final class ArgumentLayout {
+	public static final int NO_VARARG = -1;
+	
+	private final Argument[] _arguments;
+	private final ValueConverter<?>[] _converters;
+	private final int _minArity;
+	private final int _maxArity;
+	private final int _varargSlot;
+	
+	ArgumentLayout(Collection<Argument> arguments) {
+		_arguments = arguments.toArray(new Argument[arguments.size()]);
+		_converters = new ValueConverter<?>[_arguments.length];
+		int required = 0;
+		boolean hasOptional = false;
+		int varargSlot = NO_VARARG;
+		for(int slot = 0; slot < _arguments.length; slot++) {
+			Argument argument = _arguments[slot];
+			_converters[slot] = ValueConverters.forType(argument.getType() != null ? argument.getType() : String.class);
+			if(argument.isRequired()) {
+				required++;
+			} else {
+				hasOptional = true;
+			}
+			if(argument.isVararg()) {
+				varargSlot = slot;
+			}
+		}
+		_minArity = required;
+		_maxArity = varargSlot != NO_VARARG ? Integer.MAX_VALUE : hasOptional ? required + 1 : required;
+		_varargSlot = varargSlot;
+	}
+	
+	/**
+	 * @return the number of slots, one per argument.
+	 */
+	public int size() {
+		return _arguments.length;
+	}
+	
+	public Argument getArgument(int slot) {
+		return _arguments[slot];
+	}
+	
+	/**
+	 * @return the converter of the argument's values, resolved when the layout was compiled.
+	 */
+	public ValueConverter<?> getConverter(int slot) {
+		return _converters[slot];
+	}
+	
+	/**
+	 * @return the slot of the argument, or -1 if it is not one of these arguments.
+	 */
+	public int slotOf(Argument argument) {
+		for(int slot = 0; slot < _arguments.length; slot++) {
+			if(_arguments[slot] == argument) return slot;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the fewest values the command line must have.
+	 */
+	public int getMinArity() {
+		return _minArity;
+	}
+	
+	/**
+	 * @return the most values the command line may have, {@link Integer#MAX_VALUE} if there is a vararg.
+	 */
+	public int getMaxArity() {
+		return _maxArity;
+	}
+	
+	/**
+	 * @return the slot of the vararg argument, which is the last, or {@link #NO_VARARG}.
+	 */
+	public int getVarargSlot() {
+		return _varargSlot;
+	}
+	
+	public boolean hasVararg() {
+		return _varargSlot != NO_VARARG;
+	}
+	
+	/**
+	 * @return the number of arguments taking a single value, all of which come before the vararg.
+	 */
+	public int getSingleValueCount() {
+		return hasVararg() ? _varargSlot : _arguments.length;
+	}
+}
@@ -0,0 +1,14 @@
+package jpbetz.cli;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Parses the command line of a sub command against its options.  Set with 
+ * {@link CommandSet#setArgumentParser(ArgumentParser)}, implementations must be thread safe.
+ * 
+ * @see CommonsArgumentParser
+ * @see NativeArgumentParser
+ */
+public interface ArgumentParser {
+	ParsedCommandLine parse(CommandSummary command, String[] args) throws ParseException;
+}
@@ -9,6 +9,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * The positional arguments of a command, in order.  Arguments are validated as they are added, only the last
+ * may be optional or a vararg.
+ */
 public class Arguments {
 	private List<Argument> _arguments;
 	
@@ -16,6 +20,7 @@ public class Arguments {
 	private Set<Argument> _argumentSet;
 	
 	private boolean _isSealed;
+	private volatile ArgumentLayout _layout;
 	
 	public Arguments() {
 		_arguments = new ArrayList<Argument>();
@@ -25,15 +30,16 @@ public class Arguments {
 	}
 	
 	public Argument addArgument(Argument arg) {
+		if(_isSealed) {
+			throw new IllegalArgumentException("Illegal arguments defined.  No additional arguments may be defined after first optional or vararg argument.");
+		}
 		if(arg.isVararg() || !arg.isRequired()) {
-			if(_isSealed) {
-				throw new IllegalArgumentException("Illegal arguments defined.  No additional arguments may be defined after first optional or vararg argument.");
-			}
 			_isSealed = true;
-		}			
+		}
 		
 		_arguments.add(arg);
 		_argumentSet.add(arg);
+		_layout = null;
 		
 		if(arg.hasArgName()) {
 			_argumentsByName.put(arg.getArgName(), arg);
@@ -62,6 +68,18 @@ public class Arguments {
 		return Collections.unmodifiableCollection(_arguments);
 	}
 	
+	/**
+	 * @return the layout of these arguments, compiled on first use and again if arguments are added.
+	 */
+	public ArgumentLayout getLayout() {
+		ArgumentLayout layout = _layout;
+		if(layout == null) {
+			layout = new ArgumentLayout(_arguments);
+			_layout = layout;
+		}
+		return layout;
+	}
+	
 	public String getUsageArgList() {
 		StringBuilder builder = new StringBuilder();
 		int i = 1;
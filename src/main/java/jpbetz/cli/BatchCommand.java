@@ -0,0 +1,246 @@
+package jpbetz.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Runs many command lines of a {@link CommandSet} in one JVM, read one per line from a file, or from stdin
+ * if the file is "-".  Lines are split into arguments by {@link CommandLineTokenizer}, blank lines and 
+ * comments are skipped.  Added to a command set by {@link CommandSet#addBatchCommand()}.
+ * 
+ * A failing line is reported on stderr and does not stop the batch, which exits with status 1 if any line
+ * failed.  With --jobs, lines run concurrently, on virtual threads if the JVM supports them.  The output of
+ * each line is then buffered and printed in input order, or as each line completes with --unordered.
+ */
+public class BatchCommand implements Command {
+	public static final String NAME = "batch";
+	public static final String DESCRIPTION = "Run the command lines in a file, or stdin if -";
+	
+	/** how many completed lines, per job, may wait for an earlier line to complete when output is ordered */
+	private static final int WINDOW_PER_JOB = 16;
+	private static final InputStream EMPTY_INPUT = new ByteArrayInputStream(new byte[0]);
+	
+	@Arg(name="file")
+	String file;
+	
+	@Opt(opt="j", longOpt="jobs", description="Number of command lines to run at once, 1 by default")
+	int jobs = 1;
+	
+	@Opt(opt="u", longOpt="unordered", description="Print the output of each command line as soon as it completes")
+	boolean unordered;
+	
+	@Opt(opt="s", longOpt="status", description="Report the exit status of every command line, not only of failures")
+	boolean reportAll;
+	
+	private final CommandSet _commandSet;
+	private final AtomicInteger _lines = new AtomicInteger();
+	private final AtomicInteger _failures = new AtomicInteger();
+	
+	public BatchCommand(CommandSet commandSet) {
+		_commandSet = commandSet;
+	}
+	
+	@Override
+	public void exec(CommandContext commandLine) throws CommandError, Exception {
+		CommandEnvironment environment = commandLine.getEnvironment();
+		boolean isStdin = file.equals("-");
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				isStdin ? environment.getIn() : new FileInputStream(environment.resolvePath(file)), StandardCharsets.UTF_8));
+		// commands run concurrently, or kept from the batch's stdin, see their own streams through System.in,
+		// System.out and System.err only while the batch runs
+		boolean isRedirecting = jobs > 1 || isStdin;
+		if(isRedirecting) {
+			CommandEnvironment.installSystemStreams();
+		}
+		try {
+			if(jobs > 1) {
+				runConcurrently(reader, environment);
+			} else {
+				runSequentially(reader, environment, isStdin);
+			}
+		} finally {
+			if(isRedirecting) {
+				CommandEnvironment.restoreSystemStreams();
+			}
+			if(!isStdin) {
+				reader.close();
+			}
+		}
+		
+		if(_failures.get() > 0) {
+			environment.getErr().println(NAME + ": " + _failures.get() + " of " + _lines.get() + " command lines failed");
+			commandLine.setExitStatus(1);
+		}
+	}
+	
+	private void runSequentially(BufferedReader reader, CommandEnvironment environment, boolean isStdin) throws IOException {
+		if(isStdin) {
+			// the batch is reading stdin, so the commands must not
+			environment = environment.withStreams(EMPTY_INPUT, null, null);
+		}
+		String line;
+		int lineNumber = 0;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			String[] args = tokenize(line, lineNumber, environment);
+			if(args == null || args.length == 0) continue;
+			
+			CommandEnvironment previous = CommandEnvironment.current();
+			CommandEnvironment.set(environment);
+			int status;
+			try {
+				status = _commandSet.run(args);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				status = 1;
+			} finally {
+				CommandEnvironment.set(previous);
+			}
+			report(lineNumber, line, status, environment);
+		}
+	}
+	
+	private void runConcurrently(BufferedReader reader, final CommandEnvironment environment) throws Exception {
+		final Semaphore permits = new Semaphore(jobs);
+		ExecutorService executor = newExecutor(jobs);
+		Deque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+		try {
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				final String[] args = tokenize(line, lineNumber, environment);
+				if(args == null || args.length == 0) continue;
+				
+				final Result result = new Result(lineNumber, line);
+				permits.acquire();
+				Future<Result> future = executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						try {
+							result.run(environment, args);
+							if(unordered) {
+								emit(result, environment);
+							}
+							return result;
+						} finally {
+							permits.release();
+						}
+					}
+				});
+				
+				if(!unordered) {
+					pending.add(future);
+					while(!pending.isEmpty() && (pending.peek().isDone() || pending.size() > jobs * WINDOW_PER_JOB)) {
+						emit(pending.poll().get(), environment);
+					}
+				}
+			}
+			while(!pending.isEmpty()) {
+				emit(pending.poll().get(), environment);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		// wait for all unordered lines to complete
+		permits.acquire(jobs);
+	}
+	
+	private String[] tokenize(String line, int lineNumber, CommandEnvironment environment) {
+		try {
+			return CommandLineTokenizer.tokenize(line);
+		} catch (ParseException e) {
+			_lines.incrementAndGet();
+			_failures.incrementAndGet();
+			environment.getErr().println(NAME + ": line " + lineNumber + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	private synchronized void emit(Result result, CommandEnvironment environment) {
+		PrintStream out = environment.getOut();
+		PrintStream err = environment.getErr();
+		out.write(result._out.toByteArray(), 0, result._out.size());
+		out.flush();
+		err.write(result._err.toByteArray(), 0, result._err.size());
+		err.flush();
+		report(result._lineNumber, result._line, result._status, environment);
+	}
+	
+	private void report(int lineNumber, String line, int status, CommandEnvironment environment) {
+		_lines.incrementAndGet();
+		if(status != 0) {
+			_failures.incrementAndGet();
+		}
+		if(status != 0 || reportAll) {
+			environment.getErr().println(NAME + ": line " + lineNumber + " exited with status " + status + ": " + line);
+		}
+	}
+	
+	/**
+	 * @return an executor starting a virtual thread per task if the JVM supports them, a pool of the given size otherwise.
+	 */
+	private static ExecutorService newExecutor(int jobs) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)method.invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(jobs, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cli-util-batch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * A line run with its output captured.
+	 */
+	private class Result {
+		private final int _lineNumber;
+		private final String _line;
+		private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream _err = new ByteArrayOutputStream();
+		private int _status;
+		
+		Result(int lineNumber, String line) {
+			_lineNumber = lineNumber;
+			_line = line;
+		}
+		
+		void run(CommandEnvironment environment, String[] args) {
+			PrintStream err = new PrintStream(_err, true);
+			CommandEnvironment.set(environment.withStreams(EMPTY_INPUT, new PrintStream(_out, true), err));
+			try {
+				_status = _commandSet.run(args);
+			} catch (RuntimeException e) {
+				e.printStackTrace(err);
+				_status = 1;
+			} finally {
+				CommandEnvironment.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package jpbetz.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Runs a command line on a {@link CommandServer}, forwarding stdin and copying back stdout, stderr 
+ * and the exit status.  Only depends on JDK classes, so it starts far faster than the application itself:
+ * 
+ * <pre>
+ *   java -cp cli-util.jar jpbetz.cli.CommandClient /tmp/bullhorn.sock yell -n 3 hello
+ * </pre>
+ * 
+ * src/main/c/cli-client.c is the same client without a JVM, for when even the JVM start matters.
+ */
+public class CommandClient {
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("usage: CommandClient <socket> [<args>]");
+			System.exit(2);
+		}
+		System.exit(run(args[0], Arrays.copyOfRange(args, 1, args.length), System.in, System.out, System.err));
+	}
+	
+	/**
+	 * @return the exit status of the command.
+	 */
+	public static int run(String socketPath, String[] args, final InputStream stdin, OutputStream stdout, OutputStream stderr) throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(UnixDomainSocketAddress.of(Paths.get(socketPath)));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DaemonProtocol.newOutputStream(channel), DaemonProtocol.BUFFER_SIZE));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.newInputStream(channel), DaemonProtocol.BUFFER_SIZE));
+			
+			out.writeInt(args.length);
+			for(String arg : args) {
+				DaemonProtocol.writeString(out, arg);
+			}
+			DaemonProtocol.writeString(out, System.getProperty("user.dir"));
+			Map<String, String> env = System.getenv();
+			out.writeInt(env.size());
+			for(Map.Entry<String, String> entry : env.entrySet()) {
+				DaemonProtocol.writeString(out, entry.getKey());
+				DaemonProtocol.writeString(out, entry.getValue());
+			}
+			out.flush();
+			
+			Thread stdinPump = new Thread("cli-util-client-stdin") {
+				@Override
+				public void run() {
+					byte[] buffer = new byte[DaemonProtocol.BUFFER_SIZE];
+					try {
+						int read;
+						while((read = stdin.read(buffer)) >= 0) {
+							if(read > 0) {
+								DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, read);
+								out.flush();
+							}
+						}
+						DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, 0);
+						out.flush();
+					} catch (IOException e) {
+						// the server finished the command and closed the connection
+					}
+				}
+			};
+			stdinPump.setDaemon(true);
+			stdinPump.start();
+			
+			byte[] buffer = new byte[DaemonProtocol.BUFFER_SIZE];
+			while(true) {
+				byte type = in.readByte();
+				if(type == DaemonProtocol.EXIT) {
+					int status = in.readInt();
+					stdout.flush();
+					stderr.flush();
+					return status;
+				}
+				OutputStream target = type == DaemonProtocol.STDERR ? stderr : stdout;
+				int length = in.readInt();
+				while(length > 0) {
+					int read = in.read(buffer, 0, Math.min(length, buffer.length));
+					if(read < 0) throw new IOException("Connection closed by server");
+					target.write(buffer, 0, read);
+					length -= read;
+				}
+				if(type == DaemonProtocol.STDERR) {
+					stderr.flush();
+				}
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
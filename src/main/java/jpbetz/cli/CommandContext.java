@@ -1,126 +1,362 @@
 package jpbetz.cli;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.cli.TypeHandler;
 
 /**
- * Decorates apache.commons.cli.CommandLine with additional utilities for handling options,
+ * Decorates the {@link ParsedCommandLine} of an invocation with additional utilities for handling options,
  * arguments and stdin. 
  * 
+ * Options and arguments each have a slot, their index in the command's compiled options and
+ * {@link ArgumentLayout}.  Values are converted to their type the first time they are requested and kept
+ * for later requests.  Lookups by {@link ContextKey} go straight to the slot, lookups by name first find it.
+ * Streams and channels opened for options and arguments are closed when the command returns.
+ * 
+ * When created with argument files enabled, "@path" arguments are replaced by the lines of the file.  The
+ * lines bound to a vararg are only read as the vararg's values are, so a command iterating them with
+ * {@link #getArgIterable(Argument)} never holds them all in memory.  The same goes for the files matched by
+ * patterns given to File and Path varargs, when patterns are expanded.
+ * 
  * @author "Joe Betz<jbetz@linkedin.com>"
  *
  */
 public class CommandContext {
-	private CommandLine _commandLine;
+	private static final Object UNSET = new Object();
+	
+	/** The value of File options and arguments given as "-", meaning stdin. See {@link #open(File)}. */
+	public static final File STDIN = new File("-");
+	
+	private ParsedCommandLine _commandLine;
+	private SlottedCommandLine _slottedCommandLine;
+	private OptionTable _options;
 	private Arguments _arguments;
-	private Map<Argument, String> _argValues;
+	private ArgumentLayout _layout;
+	private String[] _argValues;
 	private List<String> _varargValues;
+	private String _varargFirst;
+	private Iterator<String> _varargRest;
+	private boolean _isVarargStreamed;
+	private ArgumentExpansion _expansion;
+	private CommandEnvironment _environment;
+	private int _exitStatus = 0;
+	
+	private Object[] _optionObjects;
+	private Object[] _optionLists;
+	private Object[] _argObjects;
+	private List<Object> _varargObjects;
+	private List<AutoCloseable> _resources;
 	
 	public CommandContext(CommandLine commandLine, Arguments arguments) throws ParseException {
+		this(CommonsArgumentParser.wrap(commandLine), arguments);
+	}
+	
+	public CommandContext(ParsedCommandLine commandLine, Arguments arguments) throws ParseException {
+		this(commandLine, null, arguments);
+	}
+	
+	/**
+	 * Creates the context of an invocation of the command, which may be read with the command's {@link ContextKey}s.
+	 */
+	public CommandContext(ParsedCommandLine commandLine, CommandSummary command) throws ParseException {
+		this(commandLine, command, ArgumentExpansion.NONE);
+	}
+	
+	/**
+	 * @param expansion how argument files and patterns among the arguments are expanded.
+	 */
+	CommandContext(ParsedCommandLine commandLine, CommandSummary command, ArgumentExpansion expansion) throws ParseException {
+		this(commandLine, command.getOptionTable(), command.getArgs(), expansion);
+	}
+	
+	private CommandContext(ParsedCommandLine commandLine, OptionTable options, Arguments arguments) throws ParseException {
+		this(commandLine, options, arguments, ArgumentExpansion.NONE);
+	}
+	
+	private CommandContext(ParsedCommandLine commandLine, OptionTable options, Arguments arguments, ArgumentExpansion expansion) throws ParseException {
 		_commandLine = commandLine;
+		_options = options;
+		if(options != null && commandLine instanceof SlottedCommandLine && ((SlottedCommandLine)commandLine).getTable() == options) {
+			_slottedCommandLine = (SlottedCommandLine)commandLine;
+		}
 		_arguments = arguments;
+		_environment = CommandEnvironment.current();
+		_expansion = expansion;
 		parse();
 	}
 	
 	/**
-	 * Parses and verifies the command line options.
+	 * Binds the positional arguments to the slots of the arguments' layout.
 	 * 
-	 * @throws ParseException
+	 * @throws ParseException if there are too few or too many arguments.
 	 */
-	@SuppressWarnings("unchecked") // marshall from apache commons cli
 	private void parse() throws ParseException {
-		_argValues = new HashMap<Argument, String>();
-		_varargValues = new ArrayList<String>();
+		_layout = _arguments.getLayout();
     List<String> argList = _commandLine.getArgList();
+    if(_expansion.isExpandingArgFiles() && ArgFileIterator.hasArgFile(argList)) {
+    	bindExpanded(new ArgFileIterator(argList.iterator(), _environment));
+    	return;
+    }
+    int count = argList.size();
 		
-		int required = 0;
-		boolean hasOptional = false;
-		boolean hasVarargs = false;
-		for(Argument argument : _arguments.getArguments()) {
-			if(argument.isRequired()) {
-				required++;
-			} else {
-				hasOptional = true;
+		if(count < _layout.getMinArity()) {
+			throw new ParseException("Not enough arguments provided.  " + _layout.getMinArity() + " required, but only " + count + " provided.");
+		}
+		if(count > _layout.getMaxArity()) {
+			throw new ParseException("Too many arguments provided.  Only " + _layout.getMaxArity() + " allowed, but " + count + " provided.");
+		}
+		
+		_argValues = new String[_layout.size()];
+		int singleValues = Math.min(count, _layout.getSingleValueCount());
+		for(int slot = 0; slot < singleValues; slot++) {
+			_argValues[slot] = argList.get(slot);
+		}
+		if(_layout.hasVararg()) {
+			_varargValues = argList.subList(Math.min(_layout.getVarargSlot(), count), count);
+			if(_expansion.isExpandingGlobs(_layout) && GlobIterator.hasGlob(_varargValues)) {
+				streamVararg(track(_expansion.expandGlobs(_varargValues.iterator(), _environment)));
+			}
+		} else {
+			_varargValues = Collections.emptyList();
+		}
+	}
+	
+	/**
+	 * Binds the single value arguments from the expanded arguments, leaving the rest to be read as the 
+	 * vararg's values are.
+	 */
+	private void bindExpanded(ArgFileIterator values) throws ParseException {
+		_argValues = new String[_layout.size()];
+		_varargValues = Collections.emptyList();
+		try {
+			int count = 0;
+			while(count < _layout.getSingleValueCount() && values.hasNext()) {
+				_argValues[count++] = values.next();
 			}
-			if(argument.isVararg()) {
-				hasVarargs = true;
+			if(_layout.hasVararg() && values.hasNext()) {
+				streamVararg(_expansion.isExpandingGlobs(_layout) ? track(_expansion.expandGlobs(values, _environment)) : values);
+				count++;
 			}
+			if(count < _layout.getMinArity()) {
+				throw new ParseException("Not enough arguments provided.  " + _layout.getMinArity() + " required, but only " + count + " provided.");
+			}
+			if(!_layout.hasVararg()) {
+				int total = count;
+				for(; values.hasNext(); total++) values.next();
+				if(total > count) {
+					throw new ParseException("Too many arguments provided.  Only " + _layout.getMaxArity() + " allowed, but " + total + " provided.");
+				}
+			}
+		} catch (UncheckedIOException e) {
+			values.close();
+			throw new ParseException(e.getMessage());
+		} catch (ParseException e) {
+			values.close();
+			throw e;
 		}
-		int allowed = hasOptional? required+1 : required;
-		
-		if(argList.size() < required) {
-			throw new ParseException("Not enough arguments provided.  " + required + " required, but only " + argList.size() + " provided.");
+		track(values);
+	}
+	
+	/**
+	 * Binds the vararg to values read as they are requested, the first is read now.
+	 */
+	private void streamVararg(Iterator<String> values) {
+		if(values.hasNext()) {
+			_varargFirst = values.next();
+			_varargRest = values;
+			_varargValues = null;
+		} else {
+			_varargValues = Collections.emptyList();
 		}
-		
-		if(!hasVarargs) {
-			if(argList.size() > allowed) {
-				throw new ParseException("Too many arguments provided.  Only " + allowed + " allowed, but " + argList.size() + " provided.");
+	}
+	
+	/**
+	 * @return the values of the vararg, reading any that remain in argument files or are yet to be matched
+	 * by patterns.
+	 */
+	private List<String> varargValues() {
+		if(_varargValues == null) {
+			List<String> values = new ArrayList<String>();
+			Iterator<String> iterator = streamVararg();
+			while(iterator.hasNext()) {
+				values.add(iterator.next());
 			}
+			_varargValues = values;
 		}
-		
-		int index = 0;
-		boolean finalArgEncountered = false;
-		for(Argument argument : _arguments.getArguments()) {
-			
-			if(finalArgEncountered) throw new IllegalStateException("Illegal arguments defined.  No additional arguments may be defined after first optional or vararg argument.");
+		return _varargValues;
+	}
+	
+	private Iterator<String> streamVararg() {
+		if(_varargValues != null) {
+			return _varargValues.iterator();
+		}
+		if(_isVarargStreamed) {
+			throw new IllegalStateException("The values of the vararg were read from argument files and may only be iterated once");
+		}
+		_isVarargStreamed = true;
+		final String first = _varargFirst;
+		final Iterator<String> rest = _varargRest;
+		_varargRest = null;
+		return new Iterator<String>() {
+			private boolean _isFirst = true;
 			
-			if(argument.isRequired() && !argument.isVararg()) { // the normal case
-				if(index <= argList.size()) {
-					_argValues.put(argument, argList.get(index));
-				} else {
-					throw new IllegalStateException("not enough arguments"); // should not happen given above size check
-				}
+			@Override
+			public boolean hasNext() {
+				return _isFirst || rest.hasNext();
 			}
-			else { // it's the last argument, either it's optional or a vararg
-				finalArgEncountered = true;
-				
-				if(argument.isVararg()) {
-					_varargValues = argList.subList(Math.min(index, argList.size()), argList.size());
-					
-					if(argument.isRequired() && _varargValues.size() < 1) {
-						throw new IllegalStateException("not enough arguments"); // should not happen given above size check
-					}
-				}
-				else { // if it's a optional
-					if(index < argList.size()) {
-						_argValues.put(argument, argList.get(index));
-					}
+			
+			@Override
+			public String next() {
+				if(_isFirst) {
+					_isFirst = false;
+					return first;
 				}
+				return rest.next();
 			}
-			index++;
-		}
+		};
 	}
 	
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "rawtypes" })
   public List<Object> getArgList() {
-		return (List<Object>)_commandLine.getArgList();
+		return (List)_commandLine.getArgList();
 	}
 	
 	public String[] getArgs() {
 		return _commandLine.getArgs();
 	}
+	
+	/**
+	 * @return the slot of the option, or {@link OptionTable#NOT_FOUND} if it is unknown or the context was
+	 * created without the command's options.
+	 */
+	private int optionSlot(String opt) {
+		return _options == null || opt == null ? OptionTable.NOT_FOUND : _options.slotOf(opt);
+	}
+	
+	private String optionName(int slot) {
+		Option option = _options._options[slot];
+		return option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+	}
+	
+	private boolean hasOption(int slot) {
+		return _slottedCommandLine != null ? _slottedCommandLine.hasOption(slot) : _commandLine.hasOption(optionName(slot));
+	}
+	
+	private String getOptionValue(int slot) {
+		return _slottedCommandLine != null ? _slottedCommandLine.getOptionValue(slot) : _commandLine.getOptionValue(optionName(slot));
+	}
+	
+	private String[] getOptionValues(int slot) {
+		return _slottedCommandLine != null ? _slottedCommandLine.getOptionValues(slot) : _commandLine.getOptionValues(optionName(slot));
+	}
+	
+	private Object getOptionObject(int slot) {
+		if(_optionObjects == null) {
+			_optionObjects = newMemo(_options._options.length);
+		}
+		Object result = _optionObjects[slot];
+		if(result == UNSET) {
+			result = convert(getOptionValue(slot), _options._converters[slot], "option " + optionName(slot));
+			_optionObjects[slot] = result;
+		}
+		return result;
+	}
+	
+	@SuppressWarnings("unchecked") // each value is converted to the option's type
+	private List<Object> getOptionObjects(int slot) {
+		if(_optionLists == null) {
+			_optionLists = newMemo(_options._options.length);
+		}
+		Object result = _optionLists[slot];
+		if(result == UNSET) {
+			String[] values = getOptionValues(slot);
+			result = values == null ? Collections.emptyList() : convertAll(Arrays.asList(values), _options._converters[slot]);
+			_optionLists[slot] = result;
+		}
+		return (List<Object>)result;
+	}
 
+	/**
+	 * @return the value of the option converted to its type, kept for later requests as by
+	 * {@link #getOptionObject(Option)}, so a stream or channel is opened once.
+	 * @throws ParseException if the value cannot be converted, rather than returning null.
+	 */
+	Object convertOption(Option option) throws ParseException {
+		String opt = option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+		int slot = optionSlot(opt);
+		if(slot == OptionTable.NOT_FOUND) {
+			return convertStrictly(_commandLine.getOptionValue(opt), converterOf(option.getType()), "option " + opt);
+		}
+		if(_optionObjects == null) {
+			_optionObjects = newMemo(_options._options.length);
+		}
+		if(_optionObjects[slot] == UNSET) {
+			_optionObjects[slot] = convertStrictly(getOptionValue(slot), _options._converters[slot], "option " + opt);
+		}
+		return _optionObjects[slot];
+	}
+	
+	/**
+	 * @return every value of the option converted by the converter, kept for later requests as by
+	 * {@link #getAll(ContextKey)}.
+	 * @throws ParseException if a value cannot be converted, rather than leaving it out.
+	 */
+	List<Object> convertOptionValues(Option option, ValueConverter<?> converter) throws ParseException {
+		String opt = option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+		int slot = optionSlot(opt);
+		if(slot == OptionTable.NOT_FOUND) {
+			String[] values = _commandLine.getOptionValues(opt);
+			return values == null ? Collections.emptyList() : convertAllStrictly(Arrays.asList(values), converter, "option " + opt);
+		}
+		if(_optionLists == null) {
+			_optionLists = newMemo(_options._options.length);
+		}
+		if(_optionLists[slot] == UNSET) {
+			String[] values = getOptionValues(slot);
+			_optionLists[slot] = values == null ? Collections.emptyList() : convertAllStrictly(Arrays.asList(values), converter, "option " + opt);
+		}
+		@SuppressWarnings("unchecked") // each value is converted to the option's type
+		List<Object> values = (List<Object>)_optionLists[slot];
+		return values;
+	}
+	
 	public Object getOptionObject(char opt) {
-		return _commandLine.getOptionObject(opt);
+		return getOptionObject(String.valueOf(opt));
 	}
 	
-	@SuppressWarnings("deprecation")
   public Object getOptionObject(String opt) {
-		return _commandLine.getOptionObject(opt);
+  	int slot = optionSlot(opt);
+  	if(slot != OptionTable.NOT_FOUND) {
+  		return getOptionObject(slot);
+  	}
+		return convert(_commandLine.getOptionValue(opt), converterOf(getOptionType(opt)), opt);
 	}
 	
-	@SuppressWarnings("deprecation")
 	public Object getOptionObject(Option option) {
-		return _commandLine.getOptionObject(option.getOpt());
+		return getOptionObject(option.getOpt() != null ? option.getOpt() : option.getLongOpt());
+	}
+	
+	private Object getOptionType(String opt) {
+		for(Option option : _commandLine.getOptions()) {
+			if(opt.equals(option.getOpt()) || opt.equals(option.getLongOpt())) {
+				return option.getType();
+			}
+		}
+		return null;
 	}
 	
 	public Option[] getOptions() {
@@ -128,59 +364,126 @@ public class CommandContext {
 	}
 	
 	public String getOptionValue(char opt) {
-		return _commandLine.getOptionValue(opt);
+		return getOptionValue(String.valueOf(opt));
 	}
 	
 	public String getOptionValue(String opt) {
-		return _commandLine.getOptionValue(opt);
+		int slot = optionSlot(opt);
+		return slot != OptionTable.NOT_FOUND ? getOptionValue(slot) : _commandLine.getOptionValue(opt);
 	}
 	
 	public String getOptionValue(Option option) {
-		return _commandLine.getOptionValue(option.getOpt());
+		return getOptionValue(option.getOpt() != null ? option.getOpt() : option.getLongOpt());
 	}
 	
 	public String getOptionValue(char opt, String defaultValue) {
-		return _commandLine.getOptionValue(opt, defaultValue);
+		return getOptionValue(String.valueOf(opt), defaultValue);
 	}
 	
 	public String getOptionValue(String opt, String defaultValue) {
-		return _commandLine.getOptionValue(opt, defaultValue);
+		String value = getOptionValue(opt);
+		return value != null ? value : defaultValue;
 	}
 	
 	public String getOptionValue(Option option, String defaultValue) {
-		return _commandLine.getOptionValue(option.getOpt(), defaultValue);
+		String value = getOptionValue(option);
+		return value != null ? value : defaultValue;
 	}
 	
 	public String[] getOptionValues(char opt) {
-		return _commandLine.getOptionValues(opt);
+		return getOptionValues(String.valueOf(opt));
 	}
 	
 	public String[] getOptionValues(String opt) {
-		return _commandLine.getOptionValues(opt);
+		int slot = optionSlot(opt);
+		return slot != OptionTable.NOT_FOUND ? getOptionValues(slot) : _commandLine.getOptionValues(opt);
 	}
 	
 	public String[] getOptionValues(Option option) {
-		return _commandLine.getOptionValues(option.getOpt());
+		return getOptionValues(option.getOpt() != null ? option.getOpt() : option.getLongOpt());
 	}
 	
 	public boolean hasOption(char opt) {
-		return _commandLine.hasOption(opt);
+		return hasOption(String.valueOf(opt));
 	}
 	
 	public boolean hasOption(String opt) {
-		return _commandLine.hasOption(opt);
+		int slot = optionSlot(opt);
+		return slot != OptionTable.NOT_FOUND ? hasOption(slot) : _commandLine.hasOption(opt);
 	}
 	
 	public boolean hasOption(Option option) {
-		return _commandLine.hasOption(option.getOpt());
+		return hasOption(option.getOpt() != null ? option.getOpt() : option.getLongOpt());
 	}
 	
-	public boolean hasArg(Argument arg) {
-		if(arg.isVararg()) {
-			return !_varargValues.isEmpty();
-		} else {
-			return _argValues.containsKey(arg);
+	private String getArgValue(int slot) {
+		if(slot == _layout.getVarargSlot()) {
+			if(_varargValues == null) return _varargFirst;
+			return _varargValues.isEmpty() ? null : _varargValues.get(0);
+		}
+		return slot < 0 ? null : _argValues[slot];
+	}
+	
+	private Object getArgObject(int slot) {
+		if(slot < 0) return null;
+		if(_argObjects == null) {
+			_argObjects = newMemo(_layout.size());
+		}
+		Object result = _argObjects[slot];
+		if(result == UNSET) {
+			Argument arg = _layout.getArgument(slot);
+			String value = getArgValue(slot);
+			result = convert(value, _layout.getConverter(slot), "argument " + arg.getArgName());
+			_argObjects[slot] = result;
+		}
+		return result;
+	}
+	
+	private List<Object> getArgObjects(int slot) {
+		if(slot == _layout.getVarargSlot()) {
+			if(_varargObjects == null) {
+				_varargObjects = convertAll(varargValues(), _layout.getConverter(slot));
+			}
+			return _varargObjects;
 		}
+		return Collections.singletonList(getArgObject(slot));
+	}
+	
+	/**
+	 * @return the value of the argument converted to its type, kept for later requests as by
+	 * {@link #getArgObject(Argument)}.
+	 * @throws ParseException if the value cannot be converted, rather than returning null.
+	 */
+	Object convertArg(Argument arg) throws ParseException {
+		int slot = _layout.slotOf(arg);
+		if(slot < 0) return null;
+		if(_argObjects == null) {
+			_argObjects = newMemo(_layout.size());
+		}
+		if(_argObjects[slot] == UNSET) {
+			_argObjects[slot] = convertStrictly(getArgValue(slot), _layout.getConverter(slot), "argument " + arg.getArgName());
+		}
+		return _argObjects[slot];
+	}
+	
+	/**
+	 * @return the values of the argument converted by the converter, kept for later requests as by
+	 * {@link #getArgObjects(Argument)}.
+	 * @throws ParseException if a value cannot be converted, rather than leaving it out.
+	 */
+	List<Object> convertArgValues(Argument arg, ValueConverter<?> converter) throws ParseException {
+		int slot = _layout.slotOf(arg);
+		if(slot != _layout.getVarargSlot()) {
+			return Collections.singletonList(convertArg(arg));
+		}
+		if(_varargObjects == null) {
+			_varargObjects = convertAllStrictly(varargValues(), converter, "argument " + arg.getArgName());
+		}
+		return _varargObjects;
+	}
+	
+	public boolean hasArg(Argument arg) {
+		return getArgValue(_layout.slotOf(arg)) != null;
 	}
 	
 	public boolean hasArg(String argName) {
@@ -196,12 +499,7 @@ public class CommandContext {
 	}
 	
 	public String getArgValue(Argument arg) {
-		if(arg.isVararg()) {
-			if(_varargValues.isEmpty()) return null;
-			else return _varargValues.get(0);
-		} else {
-			return _argValues.get(arg);
-		}
+		return getArgValue(_layout.slotOf(arg));
 	}
 
 	public List<String> getArgValues(String argName) {
@@ -212,31 +510,68 @@ public class CommandContext {
 	
 	public List<String> getArgValues(Argument arg) {
 		if(arg.isVararg()) {
-			return _varargValues;
+			return varargValues();
 		} else {
 			return Collections.singletonList(getArgValue(arg));
 		}
 	}
 	
-	@SuppressWarnings("unchecked") // marshall between unchecked apache cli methods
-  public <T> List<T> getArgObjects(Argument arg) {
-		List<String> values = getArgValues(arg);
-		if(arg.getType() == null) return (List<T>)values; // TODO: should throw exception if no type set
-		
-		List<T> results = new ArrayList<T>();
-		for(String value : values) {
-			try {
-				results.add((T)parseValue(value, arg.getType()));
-			} catch (ParseException e) {
-				System.err.println("Exception found converting an arg to desired type: " + e.getMessage());
-			}
+	/**
+	 * @return the values of the argument.  Values of a vararg given in argument files are read from the files
+	 * as they are iterated, rather than held in memory, and may then be iterated only once, after which the
+	 * vararg's values may not be requested again.
+	 */
+	public Iterable<String> getArgIterable(final Argument arg) {
+		if(!arg.isVararg()) {
+			String value = getArgValue(arg);
+			return value == null ? Collections.<String>emptyList() : Collections.singletonList(value);
 		}
-		return results;
+		if(_varargValues != null) {
+			return _varargValues;
+		}
+		return new Iterable<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return streamVararg();
+			}
+		};
 	}
 	
-	@SuppressWarnings("unchecked") // marshall between unchecked apache cli methods
-	private <T> T parseValue(String value, Object type) throws ParseException {
-		return (T)TypeHandler.createValue(value, type);
+	/**
+	 * @return the values of the argument, converted to its type as they are iterated.
+	 * @see #getArgIterable(Argument)
+	 */
+	public <T> Iterable<T> getArgObjectIterable(final Argument arg) {
+		final Iterable<String> values = getArgIterable(arg);
+		final ValueConverter<?> converter = _layout.getConverter(_layout.slotOf(arg));
+		return new Iterable<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				final Iterator<String> iterator = values.iterator();
+				return new Iterator<T>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+					
+					@Override
+					@SuppressWarnings("unchecked") // each value is converted to the argument's type
+					public T next() {
+						String value = iterator.next();
+						try {
+							return (T)track(converter.convert(value, _environment));
+						} catch (ParseException e) {
+							throw new IllegalArgumentException("Invalid value for argument " + arg.getArgName() + ": " + e.getMessage(), e);
+						}
+					}
+				};
+			}
+		};
+	}
+	
+	@SuppressWarnings("unchecked") // values are converted to the argument's type
+  public <T> List<T> getArgObjects(Argument arg) {
+		return (List<T>)getArgObjects(_layout.slotOf(arg));
 	}
 	
 	public <T> List<? extends Object> getArgObjects(String argName) {
@@ -245,38 +580,219 @@ public class CommandContext {
 		return getArgObjects(arg);
 	}
 	
-	@SuppressWarnings("unchecked") // marshall between unchecked apache cli methods
+	@SuppressWarnings("unchecked") // the value is converted to the argument's type
 	public <T> T getArgObject(Argument arg) {
-		String value = getArgValue(arg);
-		if(arg.getType() == null) return (T)value;
-		else if(value == null) return null;
-		else {
+		return (T)getArgObject(_layout.slotOf(arg));
+	}
+	
+	public Object getArgObject(String argName) {
+		Argument arg = _arguments.getArg(argName);
+		if(arg == null) return null;
+		return getArgObject(arg);
+	}
+	
+	/**
+	 * @return true if the option was given, or the argument has a value.
+	 */
+	public boolean has(ContextKey<?> key) {
+		if(key._kind == ContextKey.ARGUMENT) {
+			return getArgValue(key._slot) != null;
+		}
+		return _options != null ? hasOption(key._slot) : _commandLine.hasOption(key._name);
+	}
+	
+	/**
+	 * @return the value of the option or argument, converted to its type, or null if it has none.  The first
+	 * value of a vararg.
+	 */
+	public <T> T get(ContextKey<T> key) {
+		if(key._kind == ContextKey.ARGUMENT) {
+			return cast(key, getArgObject(key._slot));
+		}
+		return cast(key, _options != null ? getOptionObject(key._slot) : getOptionObject(key._name));
+	}
+	
+	/**
+	 * @return every value of the option or argument, converted to its type.
+	 */
+	@SuppressWarnings("unchecked") // values are converted to the type of the option or argument
+	public <T> List<T> getAll(ContextKey<T> key) {
+		if(key._kind == ContextKey.ARGUMENT) {
+			return (List<T>)getArgObjects(key._slot);
+		}
+		if(_options != null) {
+			return (List<T>)getOptionObjects(key._slot);
+		}
+		String[] values = _commandLine.getOptionValues(key._name);
+		return values == null ? Collections.<T>emptyList() : (List<T>)convertAll(Arrays.asList(values), converterOf(getOptionType(key._name)));
+	}
+	
+	/**
+	 * @return the unconverted value of the option or argument, or null if it has none.
+	 */
+	public String getString(ContextKey<?> key) {
+		if(key._kind == ContextKey.ARGUMENT) {
+			return getArgValue(key._slot);
+		}
+		return _options != null ? getOptionValue(key._slot) : _commandLine.getOptionValue(key._name);
+	}
+	
+	@SuppressWarnings("unchecked") // a primitive key type is satisfied by its boxed value
+	private static <T> T cast(ContextKey<T> key, Object value) {
+		if(value == null || key.getType().isPrimitive()) return (T)value;
+		return key.getType().cast(value);
+	}
+	
+	private static Object[] newMemo(int size) {
+		Object[] memo = new Object[size];
+		Arrays.fill(memo, UNSET);
+		return memo;
+	}
+	
+	private static ValueConverter<?> converterOf(Object type) {
+		return ValueConverters.forType(type != null ? type : String.class);
+	}
+	
+	private Object convert(String value, ValueConverter<?> converter, String name) {
+		if(value == null) return null;
+		try {
+			return track(converter.convert(value, _environment));
+		} catch (ParseException e) {
+			System.err.println("Exception found converting " + name + " to desired type: " + e.getMessage());
+			return null;
+		}
+	}
+	
+	private Object convertStrictly(String value, ValueConverter<?> converter, String name) throws ParseException {
+		if(value == null) return null;
+		try {
+			return track(converter.convert(value, _environment));
+		} catch (ParseException e) {
+			throw new ParseException("Invalid value for " + name + ": " + e.getMessage());
+		}
+	}
+	
+	private List<Object> convertAllStrictly(List<String> values, ValueConverter<?> converter, String name) throws ParseException {
+		List<Object> results = new ArrayList<Object>(values.size());
+		for(String value : values) {
+			results.add(convertStrictly(value, converter, name));
+		}
+		return results;
+	}
+	
+	private List<Object> convertAll(List<String> values, ValueConverter<?> converter) {
+		List<Object> results = new ArrayList<Object>(values.size());
+		for(String value : values) {
 			try {
-				return (T)parseValue(value, arg.getType());
+				results.add(track(converter.convert(value, _environment)));
 			} catch (ParseException e) {
 				System.err.println("Exception found converting an arg to desired type: " + e.getMessage());
-				return null;
 			}
 		}
+		return results;
 	}
 	
-	public Object getArgObject(String argName) {
-		Argument arg = _arguments.getArg(argName);
-		if(arg == null) return null;
-		return getArgObject(arg);
+	/**
+	 * @return a channel reading this invocation's stdin, for commands that process large input.  Closing it
+	 * does not close stdin.
+	 */
+	public ReadableByteChannel getStdinChannel() {
+		return _environment.getInChannel();
+	}
+	
+	/**
+	 * @return the lines of stdin, read as they are iterated rather than all at once.
+	 */
+	public RecordReader stdinLines() {
+		return RecordReader.lines(getStdinChannel());
+	}
+	
+	/**
+	 * @return the records of stdin separated by the delimiter, such as '\0' for the output of find -print0.
+	 */
+	public RecordReader stdinRecords(byte delimiter) {
+		return new RecordReader(getStdinChannel(), delimiter);
+	}
+	
+	/**
+	 * Opens a file given as an option or argument, which is stdin if it was given as "-".
+	 */
+	public InputStream open(File file) throws IOException {
+		if(isStdin(file)) {
+			return CommandEnvironment.unclosable(_environment.getIn());
+		}
+		return new FileInputStream(file);
+	}
+	
+	/**
+	 * Opens a channel to a file given as an option or argument, which is stdin if it was given as "-".
+	 */
+	public ReadableByteChannel openChannel(File file) throws IOException {
+		if(isStdin(file)) {
+			return getStdinChannel();
+		}
+		return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	}
+	
+	/**
+	 * @return true if the file was given as "-", meaning stdin.
+	 */
+	public static boolean isStdin(File file) {
+		return file == STDIN || file.getPath().equals("-");
+	}
+	
+	/**
+	 * Closes the value when the command returns, if it is a stream, channel or other resource opened while 
+	 * converting an option or argument.
+	 * 
+	 * @return the value.
+	 */
+	<T> T track(T value) {
+		if(value instanceof AutoCloseable) {
+			if(_resources == null) {
+				_resources = new ArrayList<AutoCloseable>();
+			}
+			_resources.add((AutoCloseable)value);
+		}
+		return value;
+	}
+	
+	/**
+	 * Closes the resources opened for the options and arguments, called once the command returns.
+	 */
+	void closeResources() {
+		if(_resources == null) return;
+		for(AutoCloseable resource : _resources) {
+			try {
+				resource.close();
+			} catch (Exception e) {
+				System.err.println("Exception found closing an option or argument: " + e.getMessage());
+			}
+		}
+		_resources = null;
+	}
+	
+	/**
+	 * @return the streams, working directory and environment variables of this invocation, which differ
+	 * from the JVM's when run by a {@link CommandServer}.
+	 */
+	public CommandEnvironment getEnvironment() {
+		return _environment;
+	}
+	
+	/**
+	 * Sets the status the command exits with if it returns normally, 0 by default.
+	 */
+	public void setExitStatus(int exitStatus) {
+		_exitStatus = exitStatus;
+	}
+	
+	public int getExitStatus() {
+		return _exitStatus;
 	}
 	
-	@SuppressWarnings("unchecked")
-  public Iterator<Object> iterator() {
-		return (Iterator<Object>)_commandLine.iterator();
+	public Iterator<Object> iterator() {
+		return Arrays.asList((Object[])_commandLine.getOptions()).iterator();
 	}
 
-	/*
-	@SuppressWarnings("unchecked") // marshal from apache commons lib
-	public String readStdin() throws IOException {
-    List<String> stdin = (List<String>)IOUtils.readLines(System.in);
-		String input = StringUtils.join(stdin.toArray(new String[0]));
-	  return input;
-  }
-  */
 }
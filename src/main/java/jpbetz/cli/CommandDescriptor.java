@@ -0,0 +1,17 @@
+package jpbetz.cli;
+
+/**
+ * Pre-built description of a {@link Command}, generated at compile time by the cli-util-processor
+ * annotation processor from the {@link SubCommand}, {@link Opt} and {@link Arg} annotations.
+ * 
+ * Registering a descriptor with {@link CommandSet#addSubCommand(CommandDescriptor)} builds the same
+ * {@link CommandSummary} as {@link CommandSet#addSubCommand(Class)} without reading annotations or
+ * fields through reflection.
+ */
+public interface CommandDescriptor {
+	String getName();
+	
+	String getDescription();
+	
+	CommandSummary createSummary();
+}
@@ -0,0 +1,243 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The standard streams, working directory and environment variables of a command invocation.
+ *
+ * By default these are the JVM's own.  A {@link CommandServer} runs each invocation with the environment
+ * of the client that requested it, set with {@link #set(CommandEnvironment)} on the thread running the
+ * invocation and inherited by threads it starts.  While {@link #installSystemStreams()} is in effect,
+ * System.in, System.out and System.err read from and write to the current thread's environment, so
+ * commands that use them directly need no changes.  {@link #restoreSystemStreams()} puts the JVM's own
+ * streams back.
+ */
+public class CommandEnvironment {
+	private static final InheritableThreadLocal<CommandEnvironment> _current = new InheritableThreadLocal<CommandEnvironment>();
+	private static final CommandEnvironment _system = new CommandEnvironment(null, null, null, null, null);
+	private static int _installs = 0;
+	private static InputStream _systemIn;
+	private static PrintStream _systemOut;
+	private static PrintStream _systemErr;
+
+	private final InputStream _in;
+	private final PrintStream _out;
+	private final PrintStream _err;
+	private final File _workingDirectory;
+	private final Map<String, String> _env;
+
+	/**
+	 * @param workingDirectory directory relative paths are resolved against, or null for the JVM's working directory.
+	 * @param env environment variables, or null for the JVM's environment.
+	 */
+	public CommandEnvironment(InputStream in, PrintStream out, PrintStream err, File workingDirectory, Map<String, String> env) {
+		_in = in;
+		_out = out;
+		_err = err;
+		_workingDirectory = workingDirectory;
+		_env = env == null ? null : Collections.unmodifiableMap(env);
+	}
+
+	/**
+	 * @return the environment of the invocation running on the current thread.
+	 */
+	public static CommandEnvironment current() {
+		CommandEnvironment environment = _current.get();
+		return environment != null ? environment : _system;
+	}
+
+	public static void set(CommandEnvironment environment) {
+		_current.set(environment);
+	}
+
+	public static void clear() {
+		_current.remove();
+	}
+
+	/**
+	 * Replaces System.in, System.out and System.err with streams that delegate to the current thread's
+	 * environment, falling back to the original streams.  Each call must be paired with a call to
+	 * {@link #restoreSystemStreams()}, the original streams are put back by the last of them.
+	 */
+	public static synchronized void installSystemStreams() {
+		if(_installs++ > 0) return;
+		final InputStream in = System.in;
+		final PrintStream out = System.out;
+		final PrintStream err = System.err;
+		_systemIn = in;
+		_systemOut = out;
+		_systemErr = err;
+
+		System.setIn(new InputStream() {
+			private InputStream target() {
+				CommandEnvironment environment = _current.get();
+				return environment != null && environment._in != null ? environment._in : in;
+			}
+
+			@Override
+			public int read() throws IOException {
+				return target().read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return target().read(b, off, len);
+			}
+
+			@Override
+			public int available() throws IOException {
+				return target().available();
+			}
+		});
+		System.setOut(new PrintStream(new EnvironmentOutputStream(out, false), true));
+		System.setErr(new PrintStream(new EnvironmentOutputStream(err, true), true));
+	}
+
+	/**
+	 * Undoes a call to {@link #installSystemStreams()}, putting the original System.in, System.out and
+	 * System.err back once every call has been undone.
+	 */
+	public static synchronized void restoreSystemStreams() {
+		if(_installs == 0 || --_installs > 0) return;
+		System.out.flush();
+		System.err.flush();
+		System.setIn(_systemIn);
+		System.setOut(_systemOut);
+		System.setErr(_systemErr);
+		_systemIn = null;
+		_systemOut = null;
+		_systemErr = null;
+	}
+
+	/**
+	 * @return a copy of this environment using the given streams, those that are null are left unchanged.
+	 */
+	public CommandEnvironment withStreams(InputStream in, PrintStream out, PrintStream err) {
+		return new CommandEnvironment(in != null ? in : _in, out != null ? out : _out, err != null ? err : _err, _workingDirectory, _env);
+	}
+
+	public InputStream getIn() {
+		return _in != null ? _in : System.in;
+	}
+
+	/**
+	 * @return a channel reading the same input as {@link #getIn()}.  For the JVM's own stdin this reads the
+	 * file descriptor directly, bypassing the buffer of System.in, so the two should not both be read.
+	 * Closing the channel does not close stdin.
+	 */
+	public ReadableByteChannel getInChannel() {
+		if(_in == null) {
+			final FileChannel channel = new FileInputStream(FileDescriptor.in).getChannel();
+			return new ReadableByteChannel() {
+				@Override
+				public int read(ByteBuffer buffer) throws IOException {
+					return channel.read(buffer);
+				}
+				
+				@Override
+				public boolean isOpen() {
+					return channel.isOpen();
+				}
+				
+				@Override
+				public void close() {
+					// closing the file channel would close the JVM's stdin
+				}
+			};
+		}
+		return Channels.newChannel(unclosable(_in));
+	}
+	
+	/**
+	 * @return a view of the stream that is not closed with it, for handing stdin to commands.
+	 */
+	static InputStream unclosable(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public void close() {
+				// the invocation's stdin belongs to its caller
+			}
+		};
+	}
+	
+	/**
+	 * @return true if this environment reads the JVM's own stdin.
+	 */
+	public boolean isSystemIn() {
+		return _in == null;
+	}
+	
+	public PrintStream getOut() {
+		return _out != null ? _out : System.out;
+	}
+
+	public PrintStream getErr() {
+		return _err != null ? _err : System.err;
+	}
+
+	public File getWorkingDirectory() {
+		return _workingDirectory != null ? _workingDirectory : new File(System.getProperty("user.dir"));
+	}
+
+	public Map<String, String> getEnv() {
+		return _env != null ? _env : System.getenv();
+	}
+
+	public String getEnv(String name) {
+		return getEnv().get(name);
+	}
+
+	/**
+	 * @return the path resolved against the working directory, if it is relative and the environment has one.
+	 */
+	public String resolvePath(String path) {
+		if(_workingDirectory == null || new File(path).isAbsolute()) {
+			return path;
+		}
+		return new File(_workingDirectory, path).getPath();
+	}
+
+	private static class EnvironmentOutputStream extends OutputStream {
+		private final PrintStream _original;
+		private final boolean _isErr;
+
+		EnvironmentOutputStream(PrintStream original, boolean isErr) {
+			_original = original;
+			_isErr = isErr;
+		}
+
+		private OutputStream target() {
+			CommandEnvironment environment = _current.get();
+			PrintStream stream = environment == null ? null : _isErr ? environment._err : environment._out;
+			return stream != null ? stream : _original;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			target().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target().flush();
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package jpbetz.cli;
+
+/**
+ * Creates the {@link Command} instance for each invocation of a command, so that concurrent invocations
+ * never share the fields options and arguments are injected into.
+ * 
+ * {@link #release(Command)} is called once the invocation completes, factories that reuse instances,
+ * such as {@link PooledCommandFactory}, may then hand the instance out again.
+ */
+public interface CommandFactory {
+	Command newInstance() throws Exception;
+	
+	default void release(Command instance) {
+	}
+}
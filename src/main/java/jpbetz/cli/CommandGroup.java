@@ -0,0 +1,51 @@
+package jpbetz.cli;
+
+import java.util.function.Consumer;
+
+/**
+ * A named group of sub commands, nested in a {@link CommandSet}, whose commands are only registered when a
+ * command line first names the group.  Added with {@link CommandSet#addGroup(String, String, Consumer)}.
+ */
+final class CommandGroup {
+	private final String _name;
+	private final String _description;
+	private final Consumer<CommandSet> _loader;
+	private volatile CommandSet _commands;
+
+	CommandGroup(String name, String description, Consumer<CommandSet> loader) {
+		_name = name;
+		_description = description;
+		_loader = loader;
+	}
+
+	String getName() {
+		return _name;
+	}
+
+	String getDescription() {
+		return _description;
+	}
+
+	boolean isLoaded() {
+		return _commands != null;
+	}
+
+	/**
+	 * @return the commands of the group, registered by its loader the first time, in a command set configured
+	 * like the parent.
+	 */
+	CommandSet getCommands(CommandSet parent) {
+		CommandSet commands = _commands;
+		if(commands == null) {
+			synchronized(this) {
+				commands = _commands;
+				if(commands == null) {
+					commands = parent.newGroupCommandSet(_name);
+					_loader.accept(commands);
+					_commands = commands;
+				}
+			}
+		}
+		return commands;
+	}
+}
@@ -0,0 +1,93 @@
+package jpbetz.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Reads the command indexes written by the annotation processor, the META-INF/cli-util/commands resources of
+ * every jar on the classpath.  Each line of an index lists a command as tab separated fields:
+ *
+ * <pre>
+ *   name	description	command class	descriptor class
+ * </pre>
+ *
+ * The descriptor class is optional.  Tabs, newlines and backslashes in a field are escaped with a backslash as
+ * \t, \n and \\.  Empty lines and lines starting with # are ignored.  Reading an index loads no classes.
+ */
+final class CommandIndex {
+	static final String RESOURCE = "META-INF/cli-util/commands";
+
+	static final int NAME = 0;
+	static final int DESCRIPTION = 1;
+	static final int CLASS = 2;
+	static final int DESCRIPTOR = 3;
+
+	private CommandIndex() {}
+
+	/**
+	 * @return the fields of each command listed by the indexes visible to the class loader, in classpath order,
+	 * the descriptor field null where it is not given.
+	 */
+	static List<String[]> read(ClassLoader classLoader) {
+		List<String[]> commands = new ArrayList<String[]>();
+		try {
+			Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+			while(indexes.hasMoreElements()) {
+				read(indexes.nextElement(), commands);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("unable to read " + RESOURCE, e);
+		}
+		return commands;
+	}
+
+	private static void read(URL index, List<String[]> commands) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8));
+		try {
+			String line;
+			for(int lineNumber = 1; (line = in.readLine()) != null; lineNumber++) {
+				if(line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t", -1);
+				if(fields.length < 3 || fields.length > 4 || fields[NAME].isEmpty() || fields[CLASS].isEmpty()) {
+					throw new IOException(index + ":" + lineNumber + ": expected a name, description, class and optional descriptor separated by tabs");
+				}
+				String[] command = new String[4];
+				for(int i = 0; i < fields.length; i++) {
+					command[i] = unescape(fields[i]);
+				}
+				if(command[DESCRIPTOR] != null && command[DESCRIPTOR].isEmpty()) {
+					command[DESCRIPTOR] = null;
+				}
+				commands.add(command);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	static String unescape(String field) {
+		if(field.indexOf('\\') < 0) {
+			return field;
+		}
+		StringBuilder text = new StringBuilder(field.length());
+		for(int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if(c == '\\' && i + 1 < field.length()) {
+				c = field.charAt(++i);
+				text.append(c == 't' ? '\t' : c == 'n' ? '\n' : c);
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+}
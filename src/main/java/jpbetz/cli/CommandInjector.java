@@ -0,0 +1,9 @@
+package jpbetz.cli;
+
+/**
+ * Copies the options and arguments parsed into a {@link CommandContext} into the annotated fields
+ * of a {@link Command} instance before {@link Command#exec(CommandContext)} is called.
+ */
+public interface CommandInjector {
+	void inject(Command instance, CommandContext input) throws Exception;
+}
@@ -0,0 +1,67 @@
+package jpbetz.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Splits a command line into arguments the way a POSIX shell would, without expansion.
+ * 
+ * Arguments are separated by whitespace.  Single quotes preserve everything up to the closing quote,
+ * double quotes preserve everything except backslash escapes, and outside of quotes a backslash 
+ * escapes the next character.  A # at the start of an argument starts a comment.
+ */
+public class CommandLineTokenizer {
+	private CommandLineTokenizer() {}
+	
+	public static String[] tokenize(String line) throws ParseException {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		boolean inToken = false;
+		int length = line.length();
+		
+		for(int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			if(Character.isWhitespace(c)) {
+				if(inToken) {
+					tokens.add(token.toString());
+					token.setLength(0);
+					inToken = false;
+				}
+			} else if(c == '#' && !inToken) {
+				break;
+			} else if(c == '\'') {
+				int end = line.indexOf('\'', i + 1);
+				if(end < 0) throw new ParseException("Unterminated single quote: " + line);
+				token.append(line, i + 1, end);
+				i = end;
+				inToken = true;
+			} else if(c == '"') {
+				i++;
+				while(i < length && line.charAt(i) != '"') {
+					char quoted = line.charAt(i);
+					if(quoted == '\\' && i + 1 < length && "\\\"$`".indexOf(line.charAt(i + 1)) >= 0) {
+						quoted = line.charAt(++i);
+					}
+					token.append(quoted);
+					i++;
+				}
+				if(i >= length) throw new ParseException("Unterminated double quote: " + line);
+				inToken = true;
+			} else if(c == '\\') {
+				if(i + 1 < length) {
+					token.append(line.charAt(++i));
+				}
+				inToken = true;
+			} else {
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if(inToken) {
+			tokens.add(token.toString());
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+}
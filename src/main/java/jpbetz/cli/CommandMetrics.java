@@ -0,0 +1,187 @@
+package jpbetz.cli;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the invocations of each sub command of a {@link CommandSet} by {@link Invocation.Outcome} and records
+ * their latency in a {@link LatencyHistogram}, for applications embedding a command set in a long running
+ * process.  Enabled with {@link CommandSet#enableMetrics()}, which adds it as an {@link InvocationListener}.
+ *
+ * Recording an invocation only adds to {@link LongAdder}s kept per command, so threads invoking commands at once
+ * do not contend.  {@link #snapshot()} reads them, and they may be exported in the Prometheus text format, on
+ * demand or periodically to a file read by a node exporter's textfile collector.
+ */
+public class CommandMetrics implements InvocationListener {
+	private static final Invocation.Outcome[] OUTCOMES = Invocation.Outcome.values();
+
+	private final String _applicationName;
+	private final ConcurrentMap<String, Recorder> _recorders = new ConcurrentHashMap<String, Recorder>();
+
+	public CommandMetrics(String applicationName) {
+		_applicationName = applicationName;
+	}
+
+	@Override
+	public void invoked(Invocation invocation) {
+		String path = invocation.getCommandPath();
+		Recorder recorder = _recorders.get(path);
+		if(recorder == null) {
+			_recorders.putIfAbsent(path, new Recorder());
+			recorder = _recorders.get(path);
+		}
+		recorder._outcomes[invocation.getOutcome().ordinal()].increment();
+		recorder._latency.record(invocation.getTotalTime());
+	}
+
+	/**
+	 * @return the metrics of each command invoked so far, by path, the command's name preceded by those of the
+	 * groups it is in, so commands of the same name in different groups are counted apart.
+	 */
+	public List<CommandStats> snapshot() {
+		List<CommandStats> stats = new ArrayList<CommandStats>();
+		for(ConcurrentMap.Entry<String, Recorder> entry : _recorders.entrySet()) {
+			Recorder recorder = entry.getValue();
+			long[] outcomes = new long[OUTCOMES.length];
+			for(int i = 0; i < outcomes.length; i++) {
+				outcomes[i] = recorder._outcomes[i].sum();
+			}
+			stats.add(new CommandStats(entry.getKey(), outcomes, recorder._latency.getCounts(),
+					recorder._latency.getSum(), recorder._latency.getMax()));
+		}
+		Collections.sort(stats, new Comparator<CommandStats>() {
+			@Override
+			public int compare(CommandStats a, CommandStats b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return stats;
+	}
+
+	/**
+	 * Writes a snapshot in the Prometheus text exposition format: the counter cli_invocations_total by command
+	 * and outcome, and the histogram cli_invocation_duration_seconds by command.
+	 * 
+	 * Prometheus bucket bounds are inclusive, while those of the histogram are exclusive.  Latencies are whole
+	 * nanoseconds, so each bucket is written with the bound one nanosecond below its own and counts exactly the
+	 * invocations Prometheus expects.  The histogram's _count is the total of its buckets, but its _sum is read
+	 * separately.  While commands are being invoked the sum may therefore include a few invocations the
+	 * buckets do not, or the other way round.  Rates over a scrape interval are unaffected.
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		List<CommandStats> snapshot = snapshot();
+		String application = "application=\"" + escape(_applicationName) + "\"";
+		out.write("# HELP cli_invocations_total Invocations of each sub command by outcome.\n");
+		out.write("# TYPE cli_invocations_total counter\n");
+		for(CommandStats stats : snapshot) {
+			for(Invocation.Outcome outcome : OUTCOMES) {
+				out.write("cli_invocations_total{" + application + ",command=\"" + escape(stats.getName())
+						+ "\",outcome=\"" + outcome.name().toLowerCase(Locale.ROOT) + "\"} " + stats.getCount(outcome) + "\n");
+			}
+		}
+		out.write("# HELP cli_invocation_duration_seconds Time from looking up each sub command to the end of its exec.\n");
+		out.write("# TYPE cli_invocation_duration_seconds histogram\n");
+		for(CommandStats stats : snapshot) {
+			String labels = application + ",command=\"" + escape(stats.getName()) + "\"";
+			long[] buckets = stats.getBucketCounts();
+			long count = 0;
+			for(int i = 0; i < buckets.length; i++) {
+				count += buckets[i];
+				String bound = i == buckets.length - 1 ? "+Inf" : seconds(CommandStats.getBucketUpperBound(i) - 1);
+				out.write("cli_invocation_duration_seconds_bucket{" + labels + ",le=\"" + bound + "\"} " + count + "\n");
+			}
+			out.write("cli_invocation_duration_seconds_sum{" + labels + "} " + seconds(stats.getLatencySum()) + "\n");
+			out.write("cli_invocation_duration_seconds_count{" + labels + "} " + count + "\n");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes a snapshot in the Prometheus text format to the file now and then at the given period, on a daemon
+	 * thread.  Each snapshot is written to a temporary file moved over the file, so readers never see a partial
+	 * one.  Failures to write are reported on stderr and retried at the next period.
+	 *
+	 * @return closing it stops the export.
+	 */
+	public AutoCloseable exportPrometheus(final Path file, long period, TimeUnit unit) {
+		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cli-util-metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writePrometheus(file);
+				} catch (IOException e) {
+					System.err.println("warning: unable to export metrics to " + file + ": " + e.getMessage());
+				} catch (RuntimeException e) {
+					// thrown out of the task it would cancel every later export
+					System.err.println("warning: unable to export metrics to " + file + ": " + e);
+				}
+			}
+		}, 0, period, unit);
+		return new AutoCloseable() {
+			@Override
+			public void close() {
+				executor.shutdownNow();
+			}
+		};
+	}
+
+	void writePrometheus(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			Writer out = new OutputStreamWriter(Files.newOutputStream(temporary), StandardCharsets.UTF_8);
+			try {
+				writePrometheus(out);
+			} finally {
+				out.close();
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static final class Recorder {
+		private final LongAdder[] _outcomes = new LongAdder[OUTCOMES.length];
+		private final LatencyHistogram _latency = new LatencyHistogram();
+
+		Recorder() {
+			for(int i = 0; i < _outcomes.length; i++) {
+				_outcomes[i] = new LongAdder();
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package jpbetz.cli;
+
+import java.util.List;
+
+/**
+ * Lists the {@link CommandDescriptor}s generated for a compilation unit.  The annotation processor
+ * generates one registry per build and lists it in META-INF/services/jpbetz.cli.CommandRegistry
+ * so that {@link CommandSet#addRegisteredSubCommands()} can find it with a {@link java.util.ServiceLoader}.
+ */
+public interface CommandRegistry {
+	List<CommandDescriptor> getDescriptors();
+}
@@ -0,0 +1,210 @@
+package jpbetz.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves invocations of a {@link CommandSet} over a Unix domain socket so that many command lines share
+ * one warm JVM.  {@link CommandClient} sends the arguments, working directory, environment and stdin of
+ * each invocation and receives its stdout, stderr and exit status, see {@link DaemonProtocol}.
+ * 
+ * Each connection is run on its own thread with a {@link CommandEnvironment} for the client, and
+ * System.in, System.out and System.err are redirected to it, so existing commands work unchanged.  The
+ * redirection applies to the whole JVM from {@link #bind()} until {@link #close()}, which restores the
+ * original streams.  Commands must not call System.exit, which would stop the server.
+ * 
+ * Example:
+ * 
+ * <pre>
+ *   CommandSet app = new CommandSet("bullhorn");
+ *   app.addSubCommands(Yell.class);
+ *   new CommandServer(app, Paths.get("/tmp/bullhorn.sock")).serve();
+ * </pre>
+ */
+public class CommandServer implements Closeable {
+	private final CommandSet _commandSet;
+	private final Path _socketPath;
+	private final ExecutorService _executor;
+	private volatile ServerSocketChannel _channel;
+	private boolean _isClosed = false;
+	
+	public CommandServer(CommandSet commandSet, Path socketPath) {
+		_commandSet = commandSet;
+		_socketPath = socketPath;
+		_executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cli-util-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Creates the socket, after which clients may connect.  Called by {@link #serve()} if needed.
+	 */
+	public synchronized void bind() throws IOException {
+		if(_channel != null) return;
+		if(_isClosed) {
+			throw new ClosedChannelException();
+		}
+		Files.deleteIfExists(_socketPath);
+		ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		channel.bind(UnixDomainSocketAddress.of(_socketPath));
+		CommandEnvironment.installSystemStreams();
+		_channel = channel;
+	}
+	
+	/**
+	 * Accepts connections until {@link #close()} is called.
+	 */
+	public void serve() throws IOException {
+		bind();
+		try {
+			while(true) {
+				final SocketChannel client;
+				try {
+					client = _channel.accept();
+				} catch (ClosedChannelException e) {
+					break;
+				}
+				_executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(client);
+					}
+				});
+			}
+		} finally {
+			Files.deleteIfExists(_socketPath);
+		}
+	}
+	
+	/**
+	 * Stops accepting connections and restores System.in, System.out and System.err.  Invocations still
+	 * running then reach their client only through {@link CommandEnvironment#current()}.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(_isClosed) return;
+		_isClosed = true;
+		_executor.shutdown();
+		if(_channel != null) {
+			try {
+				_channel.close();
+			} finally {
+				CommandEnvironment.restoreSystemStreams();
+			}
+		}
+	}
+	
+	private void handle(SocketChannel client) {
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.newInputStream(client), DaemonProtocol.BUFFER_SIZE));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DaemonProtocol.newOutputStream(client), DaemonProtocol.BUFFER_SIZE));
+			
+			String[] args = new String[in.readInt()];
+			for(int i = 0; i < args.length; i++) {
+				args[i] = DaemonProtocol.readString(in);
+			}
+			File workingDirectory = new File(DaemonProtocol.readString(in));
+			Map<String, String> env = new HashMap<String, String>();
+			int envCount = in.readInt();
+			for(int i = 0; i < envCount; i++) {
+				env.put(DaemonProtocol.readString(in), DaemonProtocol.readString(in));
+			}
+			
+			PipedInputStream stdin = new PipedInputStream(DaemonProtocol.BUFFER_SIZE);
+			final PipedOutputStream stdinWriter = new PipedOutputStream(stdin);
+			Thread stdinPump = new Thread("cli-util-server-stdin") {
+				@Override
+				public void run() {
+					pumpStdin(in, stdinWriter);
+				}
+			};
+			stdinPump.setDaemon(true);
+			stdinPump.start();
+			
+			PrintStream stdout = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT), DaemonProtocol.BUFFER_SIZE), false);
+			PrintStream stderr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR), true);
+			
+			int status;
+			CommandEnvironment.set(new CommandEnvironment(stdin, stdout, stderr, workingDirectory, env));
+			try {
+				status = _commandSet.run(args);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				status = 1;
+			} finally {
+				CommandEnvironment.clear();
+				stdout.flush();
+				stderr.flush();
+				// a pump blocked writing stdin the command never read fails once the pipe is closed, and exits
+				try {
+					stdin.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			
+			synchronized(out) {
+				out.writeByte(DaemonProtocol.EXIT);
+				out.writeInt(status);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client went away, nothing to report it to
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	private static void pumpStdin(DataInputStream in, PipedOutputStream stdin) {
+		try {
+			byte[] buffer = new byte[DaemonProtocol.BUFFER_SIZE];
+			while(in.readByte() == DaemonProtocol.STDIN) {
+				int length = in.readInt();
+				if(length == 0) break;
+				while(length > 0) {
+					int read = in.read(buffer, 0, Math.min(length, buffer.length));
+					if(read < 0) return;
+					stdin.write(buffer, 0, read);
+					length -= read;
+				}
+			}
+		} catch (IOException e) {
+			// client closed the connection, or the command stopped reading
+		} finally {
+			try {
+				stdin.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
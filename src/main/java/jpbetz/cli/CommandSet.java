@@ -1,26 +1,23 @@
 package jpbetz.cli;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.lang.reflect.Field;
-import java.net.URL;
-import java.sql.Date;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.ServiceLoader;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import org.apache.commons.cli.CommandLine;
-import org.apache.commons.cli.CommandLineParser;
-import org.apache.commons.cli.GnuParser;
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
-import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
@@ -37,263 +34,708 @@ import org.apache.commons.cli.ParseException;
  */
 public class CommandSet {
 	
+	private static final int MAX_SUGGESTIONS = 5;
+	private static final String STATS_OPTION = "--stats";
+	private static final Invocation.Phase[] PHASES = Invocation.Phase.values();
+	
 	String _applicationName;
+	/** the names of the groups this command set is nested in, each followed by a space, empty if none */
+	private String _groupPath = "";
 	Map<String, CommandSummary> _subCommands;
+	Map<String, CommandGroup> _groups;
+	
+	private volatile ArgumentParser _parser = new CommonsArgumentParser();
+	private volatile int _poolSize = 0;
+	private final CommandTrie<Object> _index = new CommandTrie<Object>();
+	private final HelpRenderer _help;
+	private volatile boolean _isMatchingPrefixes = false;
+	private volatile boolean _isStatsEnabled = false;
+	private volatile boolean _isRecordingEvents = Boolean.getBoolean("jpbetz.cli.jfr");
+	private volatile ArgumentExpansion _expansion = ArgumentExpansion.NONE;
+	private List<InvocationListener> _listeners = new CopyOnWriteArrayList<InvocationListener>();
+	private CommandMetrics _metrics;
+	private final ConcurrentMap<CommandSummary, CommandFactory> _pools = new ConcurrentHashMap<CommandSummary, CommandFactory>();
 	
 	public CommandSet(String name) {
 		_applicationName = name;
 		_subCommands = new TreeMap<String, CommandSummary>();
+		_groups = new TreeMap<String, CommandGroup>();
+		_help = new HelpRenderer(name, _subCommands, _groups);
 	}
 	
 	public void addSubCommand(CommandSummary subCommand) {
 		if(subCommand != null) {
 			_subCommands.put(subCommand.getName(), subCommand);
+			_index.put(subCommand.getName(), subCommand);
+			_help.invalidate();
 		}
 	}
 	
+	/**
+	 * @throws IllegalArgumentException if the command's arguments are misdeclared, such as an argument declared
+	 * after an optional or vararg one.  Commands registered lazily throw it when they are first loaded.
+	 */
 	public void addSubCommand(Class<? extends Command> subCommandClass) {
 		addSubCommand(buildSubCommand(subCommandClass));
 	}
 	
+	/**
+	 * Adds a group of sub commands, run as "&lt;application&gt; &lt;group&gt; &lt;command&gt;".  The loader registers the
+	 * group's commands, or groups, on the command set it is given, and is only called the first time a command
+	 * line names the group, so the classes of the group's commands are not loaded until then:
+	 * 
+	 * <pre>
+	 *   app.addGroup("db", "Database commands", new Consumer&lt;CommandSet&gt;() {
+	 *     public void accept(CommandSet db) {
+	 *       db.addSubCommands(Migrate.class, Dump.class);
+	 *     }
+	 *   });
+	 * </pre>
+	 * 
+	 * The group's command set has the parser, pooling and argument settings this one has when it is loaded.
+	 */
+	public void addGroup(String name, String description, Consumer<CommandSet> loader) {
+		CommandGroup group = new CommandGroup(name, description, loader);
+		_groups.put(name, group);
+		_index.put(name, group);
+		_help.invalidate();
+	}
+	
+	/**
+	 * @return a command set for the commands of a group, with the settings of this one.
+	 */
+	CommandSet newGroupCommandSet(String groupName) {
+		CommandSet group = new CommandSet(_applicationName + " " + groupName);
+		group._groupPath = _groupPath + groupName + " ";
+		group._parser = _parser;
+		group._poolSize = _poolSize;
+		group._isMatchingPrefixes = _isMatchingPrefixes;
+		group._expansion = _expansion;
+		group._listeners = _listeners;
+		group._isRecordingEvents = _isRecordingEvents;
+		return group;
+	}
+	
 	public void addSubCommands(Class<? extends Command> ...subCommandClasses) {
 		for(Class<? extends Command> subCommandClass : subCommandClasses) {
 			addSubCommand(subCommandClass);
 		}
 	}
 	
+	/**
+	 * Registers a command by class name.  The class is not loaded until the command is invoked or its 
+	 * help is printed, listing commands uses only the name and description given here.
+	 */
+	public void addSubCommand(final String name, final String description, final String className) {
+		addSubCommand(new CommandSummary(name, description, new Supplier<CommandSummary>() {
+			@Override
+			public CommandSummary get() {
+				Class<? extends Command> commandClass;
+				try {
+					commandClass = loadCommandClass(className);
+				} catch (Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+				return buildSubCommand(commandClass, name, description);
+			}
+		}));
+	}
+	
+	/**
+	 * Registers a command created by the given factory, which is called for each invocation.  The factory is
+	 * not called until the command is invoked or its help is printed.  The command class need not have a 
+	 * {@link SubCommand} annotation.
+	 */
+	public void addSubCommand(final String name, final String description, final Supplier<? extends Command> factory) {
+		addSubCommand(new CommandSummary(name, description, new Supplier<CommandSummary>() {
+			@Override
+			public CommandSummary get() {
+				// the first instance is needed to find the command's class, keep it for the first invocation
+				final AtomicReference<Command> first = new AtomicReference<Command>(factory.get());
+				return buildSubCommand(first.get().getClass(), new CommandFactory() {
+					@Override
+					public Command newInstance() {
+						Command instance = first.getAndSet(null);
+						return instance != null ? instance : factory.get();
+					}
+				}, name, description);
+			}
+		}));
+	}
+	
+	/**
+	 * Registers a command from its generated descriptor.  Unlike {@link #addSubCommand(Class)} this does
+	 * not inspect the command class through reflection, and the summary is only created if the command is
+	 * invoked or its help is printed.
+	 */
+	public void addSubCommand(final CommandDescriptor descriptor) {
+		addSubCommand(new CommandSummary(descriptor.getName(), descriptor.getDescription(), new Supplier<CommandSummary>() {
+			@Override
+			public CommandSummary get() {
+				return descriptor.createSummary();
+			}
+		}));
+	}
+	
+	public void addSubCommands(CommandRegistry registry) {
+		for(CommandDescriptor descriptor : registry.getDescriptors()) {
+			addSubCommand(descriptor);
+		}
+	}
+	
+	/**
+	 * Registers the commands of every {@link CommandRegistry} generated by the annotation processor
+	 * and listed in META-INF/services/jpbetz.cli.CommandRegistry on the classpath.
+	 */
+	public void addRegisteredSubCommands() {
+		for(CommandRegistry registry : ServiceLoader.load(CommandRegistry.class)) {
+			addSubCommands(registry);
+		}
+	}
+	
+	/**
+	 * Registers the commands listed in the META-INF/cli-util/commands index of every jar on the classpath,
+	 * written by the annotation processor when the jar is built.  Only the index is read, neither the commands
+	 * nor their descriptors are loaded until a command is invoked or its help is printed, so listing commands
+	 * loads no classes.  A name that is already registered, or listed by a jar earlier on the classpath, is
+	 * not replaced.
+	 */
+	public void addIndexedSubCommands() {
+		for(String[] command : CommandIndex.read(getClassLoader())) {
+			final String name = command[CommandIndex.NAME];
+			final String description = command[CommandIndex.DESCRIPTION];
+			final String descriptorName = command[CommandIndex.DESCRIPTOR];
+			if(_subCommands.containsKey(name) || _groups.containsKey(name)) {
+				continue;
+			}
+			if(descriptorName == null) {
+				addSubCommand(name, description, command[CommandIndex.CLASS]);
+				continue;
+			}
+			addSubCommand(new CommandSummary(name, description, new Supplier<CommandSummary>() {
+				@Override
+				public CommandSummary get() {
+					CommandDescriptor descriptor;
+					try {
+						descriptor = (CommandDescriptor)Class.forName(descriptorName, true, getClassLoader()).getDeclaredConstructor().newInstance();
+					} catch (Exception e) {
+						e.printStackTrace();
+						return null;
+					}
+					return descriptor.createSummary();
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * Adds the {@link BatchCommand}, named "batch", which runs many command lines of this set in one JVM.
+	 */
+	public void addBatchCommand() {
+		addSubCommand(BatchCommand.NAME, BatchCommand.DESCRIPTION, new Supplier<Command>() {
+			@Override
+			public Command get() {
+				return new BatchCommand(CommandSet.this);
+			}
+		});
+	}
+	
+	/**
+	 * Adds the {@link CompletionCommand}, named "completion", which prints a completion script for bash, zsh
+	 * or fish, so completing command lines of this set does not start a JVM.
+	 */
+	public void addCompletionCommand() {
+		addSubCommand(CompletionCommand.NAME, CompletionCommand.DESCRIPTION, new Supplier<Command>() {
+			@Override
+			public Command get() {
+				return new CompletionCommand(CommandSet.this);
+			}
+		});
+	}
+	
+	/**
+	 * Adds the {@link StatsCommand}, named "stats", which prints the metrics recorded since
+	 * {@link #enableMetrics()}, enabling them.
+	 */
+	public void addStatsCommand() {
+		final CommandMetrics metrics = enableMetrics();
+		addSubCommand(StatsCommand.NAME, StatsCommand.DESCRIPTION, new Supplier<Command>() {
+			@Override
+			public Command get() {
+				return new StatsCommand(metrics);
+			}
+		});
+	}
+	
+	/**
+	 * Runs the command line and exits the JVM with status 1 if it fails.
+	 */
 	public void invoke(String[] args) {
+		int status = run(args);
+		if(status != 0) {
+			System.exit(status);
+		}
+	}
+	
+	/**
+	 * Runs the command line without exiting the JVM.
+	 * 
+	 * @return the exit status, 0 if the command succeeded and 1 if it was not found, could not be parsed or failed,
+	 * unless the command set another with {@link CommandContext#setExitStatus(int)}.
+	 */
+	public int run(String[] args) {
+		if(_isStatsEnabled && args.length > 0 && (args[0].equals(STATS_OPTION) || args[0].startsWith(STATS_OPTION + "="))) {
+			return runWithStats(args);
+		}
+		return run(args, _listeners.isEmpty() ? 0 : System.nanoTime(), _isRecordingEvents ? new InvocationEvents() : null);
+	}
+	
+	/**
+	 * @param events the flight recorder events of the invocation, or null if they are not recorded.
+	 */
+	private int run(String[] args, long start, InvocationEvents events) {
 		if(args.length == 0) {
 			printHelp();
-			return;
+			return 0;
 		}
 		
-		String subCommand = args[0].toLowerCase().trim();
-		
-		if(subCommand.equals("help")) {
+		if(args[0].trim().equalsIgnoreCase("help")) {
 			printHelp(args);
-      return;
+      return 0;
 		}
 		
-		CommandSummary subCommandSummary = _subCommands.get(subCommand);
+		if(events != null) {
+			events.begin(Invocation.Phase.LOOKUP);
+		}
+		Object subCommand = findSubCommand(args[0]);
+		if(events != null) {
+			events.end(args[0]);
+		}
 		
-		if(subCommandSummary == null) {
-			printHelp("Command not found: " + subCommand);
+		if(subCommand == null) {
+			printNotFound(args[0]);
+			return 1;
+		} else if(subCommand instanceof CommandGroup) {
+			return ((CommandGroup)subCommand).getCommands(this).run(Arrays.copyOfRange(args, 1, args.length), start, events);
 		} else {
-			runSubCommand(subCommandSummary, Arrays.copyOfRange(args, 1, args.length));
+			return execute((CommandSummary)subCommand, Arrays.copyOfRange(args, 1, args.length), start, events);
 		}
 	}
 
+	/**
+	 * Runs the command line following --stats, then prints the resources it used on stderr.
+	 */
+	private int runWithStats(String[] args) {
+		String format = args[0].length() > STATS_OPTION.length() ? args[0].substring(STATS_OPTION.length() + 1) : "text";
+		if(!format.equals("text") && !format.equals("json")) {
+			printHelp("Unknown " + STATS_OPTION + " format: " + format + ", expected text or json");
+			return 1;
+		}
+		String[] commandLine = Arrays.copyOfRange(args, 1, args.length);
+		ResourceStats stats = new ResourceStats();
+		int status = run(commandLine);
+		stats.print(CommandEnvironment.current().getErr(), String.join(" ", commandLine), status, format.equals("json"));
+		return status;
+	}
+	
+	/**
+	 * @return the {@link CommandSummary} or {@link CommandGroup} of the name, ignoring case, or of a unique
+	 * prefix of a name if prefixes are matched, or null if there is none.
+	 */
+	private Object findSubCommand(String name) {
+		return _isMatchingPrefixes ? _index.getByPrefix(name) : _index.get(name);
+	}
+	
+	/**
+	 * Prints the commands the name could have meant, the commands it is a prefix of or those within a small
+	 * edit distance, or all commands if there are none.
+	 */
+	private void printNotFound(String name) {
+		String command = name.toLowerCase().trim();
+		List<String> candidates = _isMatchingPrefixes ? _index.withPrefix(name, MAX_SUGGESTIONS) : Collections.<String>emptyList();
+		if(!candidates.isEmpty()) {
+			_help.printSuggestions("Ambiguous command: " + command, candidates);
+			return;
+		}
+		candidates = _index.suggest(name, Math.min(2, Math.max(1, command.length() / 3)), MAX_SUGGESTIONS);
+		if(!candidates.isEmpty()) {
+			_help.printSuggestions("Command not found: " + command, candidates);
+		} else {
+			printHelp("Command not found: " + command);
+		}
+	}
+	
 	public void printHelp() {
-  	System.out.println("usage: " + _applicationName + " <command> [<args>]");
-  	System.out.println();
-  	System.out.println("Available commands are:");
-  	Formatter subCommandFormatter = new Formatter(System.out);
-  	for(CommandSummary commandSummary : _subCommands.values()) {
-  		subCommandFormatter.format("  %1$-20.19s %2$2s\n", commandSummary.getName(), commandSummary.getDescription());
-  		//System.out.println("\t" + commandSummary.getName() + "\t\t" + commandSummary.getDescription());
-  	}
-  	System.out.println();
-  	System.out.println("See '" + _applicationName + " help <command>' for more information on a specific command.");
+		_help.printCommands(null);
   }
 
 	public void printHelp(String message) {
-  	System.out.println(message);
-  	printHelp();
+		_help.printCommands(message);
   }
 
 	private void printHelp(String[] args) {
 	  if (args.length == 1) {
 	  	printHelp();
 	  	return;
+	  }
+	  Object subCommand = findSubCommand(args[1]);
+	  if(subCommand == null) {
+	  	printNotFound(args[1]);
+	  } else if(subCommand instanceof CommandGroup) {
+	  	String[] groupArgs = Arrays.copyOfRange(args, 1, args.length);
+	  	groupArgs[0] = "help";
+	  	((CommandGroup)subCommand).getCommands(this).printHelp(groupArgs);
 	  } else {
-	  	printSubCommandHelp(args[1].toLowerCase().trim());
-	  	return;
+	  	printSubCommandHelp((CommandSummary)subCommand, null);
 	  }
   }
-	
-	private void printSubCommandHelp(String helpCommand) {
-		printSubCommandHelp(helpCommand, null);
-	}
 
-	private void printSubCommandHelp(String helpCommand, String message) {
-  	CommandSummary subCommand = _subCommands.get(helpCommand);
-  	if(subCommand == null) {
-  		printHelp("Command not found: " + helpCommand);
-  		return;
-  	}
-  	
-    HelpFormatter formatter = new HelpFormatter();
-    if(message != null) {
-    	System.err.println(subCommand.getName() + ": " + message);
-    	System.out.println();
-    } else {
-    	System.out.println(subCommand.getName() + ": " + subCommand.getDescription());
-    }
-  	formatter.printHelp(_applicationName + " " + subCommand.getName() + " [options] " + subCommand.getArgs().getUsageArgList(), subCommand.getOptions());
-  	System.out.println();
+	private void printSubCommandHelp(CommandSummary subCommand, String message) {
+  	_help.printCommand(subCommand, message);
   }
 	
 	private CommandSummary buildSubCommand(Class<? extends Command> commandClass) {
-  	try {
-      Command instance = commandClass.newInstance();
-      SubCommand cliCommand = commandClass.getAnnotation(SubCommand.class);
-      
-      if(cliCommand != null) {
-  	    Options options = new Options();
-  	    Arguments args = new Arguments();
-      
-  			Map<Option, Field> optionFields = new HashMap<Option, Field>();
-  
-      	for(Field field : commandClass.getDeclaredFields()) {
-      		field.setAccessible(true);
-    			Opt optionAnnotations = field.getAnnotation(Opt.class);
-    			Arg argumentAnnotations = field.getAnnotation(Arg.class);
-    			
-    			if(optionAnnotations != null && argumentAnnotations != null) {
-    				System.err.println("error: " + commandClass + " field " + field.getName() + " has both @Arg and @Opt annotations, only one is allowed per field.");
-    				return null;
-    			}
-    			
-    			if(optionAnnotations != null) {
-    				Option option = extractOption(field, optionAnnotations);
-    				options.addOption(option);
-    				optionFields.put(option, field);
-    			}
-    			
-    			if(argumentAnnotations != null) {
-    				Argument argument = extractArgument(field, argumentAnnotations);
-    				args.addArgument(argument);
-    			}
-    		}
-  
-  	    return new CommandSummary(instance, cliCommand.name(), cliCommand.description(), options, args, optionFields);
-      } else {
-      	System.err.println("warning: " + commandClass + " is missing @SubCommand annotation, ignoring.");
-      	return null;
-      }
-      
-    } catch (Exception e) {
-      e.printStackTrace();
-      return null;
-    }
-  }
+		SubCommand cliCommand = commandClass.getAnnotation(SubCommand.class);
+		if(cliCommand != null) {
+			return buildSubCommand(commandClass, cliCommand.name(), cliCommand.description());
+		} else {
+			System.err.println("warning: " + commandClass + " is missing @SubCommand annotation, ignoring.");
+			return null;
+		}
+	}
+	
+	private CommandSummary buildSubCommand(Class<? extends Command> commandClass, String name, String description) {
+		CommandFactory factory;
+		try {
+			factory = new ConstructorCommandFactory(commandClass);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		return buildSubCommand(commandClass, factory, name, description);
+	}
+	
+	private CommandSummary buildSubCommand(Class<? extends Command> commandClass, CommandFactory factory, String name, String description) {
+		try {
+	    Options options = new Options();
+	    Arguments args = new Arguments();
+    
+			Map<Option, Field> optionFields = new HashMap<Option, Field>();
+
+    	for(Field field : commandClass.getDeclaredFields()) {
+    		field.setAccessible(true);
+  			Opt optionAnnotations = field.getAnnotation(Opt.class);
+  			Arg argumentAnnotations = field.getAnnotation(Arg.class);
+  			
+  			if(optionAnnotations != null && argumentAnnotations != null) {
+  				System.err.println("error: " + commandClass + " field " + field.getName() + " has both @Arg and @Opt annotations, only one is allowed per field.");
+  				return null;
+  			}
+  			
+  			if(optionAnnotations != null) {
+  				Option option = extractOption(field, optionAnnotations);
+  				options.addOption(option);
+  				optionFields.put(option, field);
+  			}
+  			
+  			if(argumentAnnotations != null) {
+  				Argument argument = extractArgument(field, argumentAnnotations);
+  				try {
+  					args.addArgument(argument);
+  				} catch (IllegalArgumentException e) {
+  					throw new IllegalArgumentException(commandClass.getName() + " field " + field.getName() + ": " + e.getMessage(), e);
+  				}
+  			}
+  		}
+
+	    return new CommandSummary(factory, name, description, options, args, optionFields);
+		} catch (IllegalArgumentException e) {
+			// a misdeclared command is a programming error, not a command to leave out quietly
+			throw e;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	private Class<? extends Command> loadCommandClass(String className) throws ClassNotFoundException {
+		return Class.forName(className, true, getClassLoader()).asSubclass(Command.class);
+	}
+	
+	private static ClassLoader getClassLoader() {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return classLoader != null ? classLoader : CommandSet.class.getClassLoader();
+	}
 
 	public void runSubCommand(CommandSummary command, String[] args) {
-		Options options = command.getOptions();
-		Arguments arguments = command.getArgs();
-		CommandLineParser parser = new GnuParser();
+		int status = execute(command, args, _listeners.isEmpty() ? 0 : System.nanoTime(), _isRecordingEvents ? new InvocationEvents() : null);
+		if(status != 0) {
+			System.exit(status);
+		}
+	}
+	
+	/**
+	 * Runs the command, timing its phases only if there are listeners and recording their events only if events
+	 * is not null.
+	 */
+	private int execute(CommandSummary command, String[] args, long start, InvocationEvents events) {
+		Invocation invocation = _listeners.isEmpty() ? null : new Invocation(command, _groupPath.isEmpty() ? command.getName() : _groupPath + command.getName(), args, start);
+		if(invocation != null) {
+			invocation.end(Invocation.Phase.LOOKUP);
+		}
+		Invocation.Phase phase = Invocation.Phase.PARSE;
+		Invocation.Outcome outcome = Invocation.Outcome.SUCCESS;
+		Exception failure = null;
+		int status = 1;
+		if(events != null) {
+			events.begin(phase);
+		}
 		try {
-	    CommandLine commandLine = parser.parse(options, args);
-	    CommandContext input = new CommandContext(commandLine, arguments);
+	    ParsedCommandLine commandLine = _parser.parse(command, args);
+	    phase = endPhase(invocation, events, command, phase, true);
+	    CommandContext input = new CommandContext(commandLine, command, _expansion);
+	    phase = endPhase(invocation, events, command, phase, true);
+	    CommandFactory factory = getFactory(command);
+	    Command instance = null;
 	    try {
-	    	Command instance = command.getInstance();
-	    	injectArguments(arguments, input, instance);
-	    	injectOptions(command, options, input, instance);
-	      command.getInstance().exec(input);
+	    	instance = factory.newInstance();
+	    	command.getInjector().inject(instance, input);
+	    	phase = endPhase(invocation, events, command, phase, true);
+	      instance.exec(input);
+	      endPhase(invocation, events, command, phase, false);
+	      status = input.getExitStatus();
 	    } catch (CommandError e) {
-	    	printSubCommandHelp(command.getName(), "error: " + e.getMessage());
-	    	System.exit(1);
+	    	endPhase(invocation, events, command, phase, false);
+	    	outcome = Invocation.Outcome.COMMAND_ERROR;
+	    	failure = e;
+	    	printSubCommandHelp(command, "error: " + e.getMessage());
+	    } catch (ParseException e) {
+	    	endPhase(invocation, events, command, phase, false);
+	    	outcome = Invocation.Outcome.PARSE_ERROR;
+	    	failure = e;
+	    	printSubCommandHelp(command, "error: " + e.getMessage());
       } catch (Exception e) {
+      	endPhase(invocation, events, command, phase, false);
+      	outcome = Invocation.Outcome.EXCEPTION;
+      	failure = e;
 	      e.printStackTrace();
-	      System.exit(1);
+      } finally {
+      	input.closeResources();
+      	if(instance != null) {
+      		factory.release(instance);
+      	}
       }
     } catch (ParseException e) {
-    	printSubCommandHelp(command.getName(), "error: " + e.getMessage());
-    	System.exit(1);
+    	endPhase(invocation, events, command, phase, false);
+    	outcome = Invocation.Outcome.PARSE_ERROR;
+    	failure = e;
+    	printSubCommandHelp(command, "error: " + e.getMessage());
+    } catch (Exception e) {
+    	endPhase(invocation, events, command, phase, false);
+    	outcome = Invocation.Outcome.EXCEPTION;
+    	failure = e;
+    	e.printStackTrace();
     }
+		if(events != null) {
+			events.complete(command.getName(), outcome, status);
+		}
+		if(invocation != null) {
+			invocation.complete(outcome, failure, status);
+			for(InvocationListener listener : _listeners) {
+				try {
+					listener.invoked(invocation);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return status;
+	}
+	
+	/**
+	 * Ends the phase, or the phase the invocation failed in, and begins the event of the next one if asked to.  A
+	 * failed phase is ended before the failure is reported, so its time does not include printing it.
+	 * 
+	 * @return the next phase.
+	 */
+	private static Invocation.Phase endPhase(Invocation invocation, InvocationEvents events, CommandSummary command, Invocation.Phase phase, boolean isBeginningNext) {
+		if(invocation != null) {
+			invocation.end(phase);
+		}
+		Invocation.Phase next = PHASES[Math.min(phase.ordinal() + 1, PHASES.length - 1)];
+		if(events != null) {
+			events.end(command.getName());
+			if(isBeginningNext) {
+				events.begin(next);
+			}
+		}
+		return next;
+	}
+	
+	/**
+	 * Sets the parser used for the command lines of all sub commands, {@link CommonsArgumentParser} by 
+	 * default.  {@link NativeArgumentParser} is faster and accepts the same command lines.
+	 */
+	public void setArgumentParser(ArgumentParser parser) {
+		_parser = parser;
+	}
+	
+	/**
+	 * Adds a listener notified of every invocation of a sub command, including those of groups, with the time
+	 * taken by each phase and the outcome.  Phases are only timed while there are listeners.
+	 */
+	public void addInvocationListener(InvocationListener listener) {
+		_listeners.add(listener);
+	}
+	
+	public void removeInvocationListener(InvocationListener listener) {
+		_listeners.remove(listener);
+	}
+	
+	/**
+	 * Records the invocations, failures and latency of each sub command from now on, including those of groups.
+	 * 
+	 * @return the metrics, the same on every call.
+	 */
+	public synchronized CommandMetrics enableMetrics() {
+		if(_metrics == null) {
+			_metrics = new CommandMetrics(_applicationName);
+			addInvocationListener(_metrics);
+		}
+		return _metrics;
+	}
+	
+	/**
+	 * Accepts any prefix of a sub command's name that no other sub command starts with, as git does.  Off by
+	 * default, as a prefix that is unique today may not be once more commands are added.
+	 */
+	public void setPrefixMatchingEnabled(boolean isEnabled) {
+		_isMatchingPrefixes = isEnabled;
+	}
+	
+	/**
+	 * Accepts a --stats option before the sub command, which prints the resources the command line used on stderr
+	 * once it completes: wall time, CPU time and bytes allocated by the thread, garbage collections, peak heap and
+	 * classes loaded.  --stats=json prints them as a single line of JSON, for gathering in performance tracking.
+	 * Off by default.
+	 */
+	public void setStatsEnabled(boolean isEnabled) {
+		_isStatsEnabled = isEnabled;
 	}
 
-	@SuppressWarnings("unchecked") // marshal from apache cli
-  private void injectOptions(CommandSummary command, Options options, CommandContext input, Command instance) throws IllegalAccessException {
-	  for(Option option: (Collection<Option>)options.getOptions()) {
-	  	Field field = command.getOptionFields().get(option);
-	  	if(option.hasArg()) {
-	  		if(!input.hasOption(option)) {
-	  			continue;
-	  		}
-	  		if(option.hasValueSeparator()) {
-	  			Object[] values = input.getOptionValues(option);
-	  			field.set(instance, values);
-	  		} else {
-	  			
-	  			Object value = input.getOptionObject(option);
-	  			field.set(instance, value);
-	  		}
-	  	} else {
-        if (input.hasOption(option))
-        {
-          field.setBoolean(instance, input.hasOption(option));
-        }
-	  	}
-	  }
-  }
+	/**
+	 * Records a JDK Flight Recorder event for each phase of an invocation and for the whole invocation, see
+	 * {@link Invocation.Phase}.  Off by default, or on if the jpbetz.cli.jfr system property is true, as loading
+	 * the flight recorder classes slows the start of the JVM.
+	 */
+	public void setFlightRecorderEventsEnabled(boolean isEnabled) {
+		_isRecordingEvents = isEnabled;
+	}
 
-	private void injectArguments(Arguments arguments, CommandContext input,
-      Command instance) throws IllegalAccessException {
-	  for(Argument arg: arguments.getArguments()) {
-	  	if(arg.isVararg()) {
-	  		List<? extends Object> values = input.getArgObjects(arg);
-	  		arg.getField().set(instance, values);
-	  	} else {
-	  		Object value = input.getArgObject(arg);
-	  		if(value != null) {
-	  			arg.getField().set(instance, value);
-	  		}
-	  	}
-	  }
-  }
+	/**
+	 * Replaces each "@path" argument of a sub command with the lines of the file, one argument per line, for
+	 * argument lists too long for the OS to pass.  "@-" reads them from stdin and "@@" escapes an argument
+	 * starting with "@".  Off by default.
+	 * 
+	 * @see CommandContext#getArgIterable(Argument)
+	 */
+	public void setArgFilesEnabled(boolean isEnabled) {
+		_expansion = _expansion.withArgFiles(isEnabled);
+	}
+	
+	/**
+	 * Replaces each glob pattern given to a File or Path vararg, such as "logs/**&#47;*.log", with the files
+	 * it matches, for shells that do not expand patterns or arguments given quoted.  Directories are walked in
+	 * parallel and the matches bound as they are found.  Off by default.
+	 */
+	public void setGlobsEnabled(boolean isEnabled) {
+		_expansion = _expansion.withGlobs(isEnabled);
+	}
+	
+	/**
+	 * Sets the most files a pattern may match before the command fails, 1000000 by default.
+	 */
+	public void setMaxGlobMatches(int maxMatches) {
+		_expansion = _expansion.withMaxGlobMatches(maxMatches);
+	}
+	
+	/**
+	 * Pools up to the given number of idle instances of each {@link ReusableCommand}, instead of creating a
+	 * new instance for every invocation.  Pooling is off by default.
+	 */
+	public void setCommandPoolSize(int poolSize) {
+		_poolSize = poolSize;
+		_pools.clear();
+	}
 	
+	private CommandFactory getFactory(CommandSummary command) {
+		if(_poolSize <= 0) {
+			return command.getFactory();
+		}
+		CommandFactory pool = _pools.get(command);
+		if(pool == null) {
+			_pools.putIfAbsent(command, new PooledCommandFactory(command.getFactory(), _poolSize));
+			pool = _pools.get(command);
+		}
+		return pool;
+	}
+
 	private Argument extractArgument(Field field, Arg argumentAnnotations) {
 	  ArgumentBuilder builder = ArgumentBuilder.newBuilder(field);
 	  builder.withArgName(argumentAnnotations.name());
 	  builder.isVararg(argumentAnnotations.isVararg());
 	  builder.isRequired(!argumentAnnotations.optional());
-	  builder.withType(argumentAnnotations.isVararg() ? argumentAnnotations.type() : field.getType());
+	  builder.withType(argumentAnnotations.isVararg() ? varargType(field, argumentAnnotations) : field.getType());
 	  Argument argument = builder.create();
+	  if(!ValueConverters.isSupported(argument.getType())) {
+	  	System.out.println("warning: no converter registered for type " + argument.getType() + " of field " + field.getName());
+	  }
 	  return argument;
   }
 	
-	private static final Set<Class<?>> allowedTypes = new HashSet<Class<?>>();
-	
-	static {
-		allowedTypes.add(Number.class);
-		allowedTypes.add(File.class);
-		allowedTypes.add(FileInputStream.class);
-		allowedTypes.add(String.class);
-		allowedTypes.add(Date.class);
-		allowedTypes.add(Class.class);
-		allowedTypes.add(File[].class);
-		allowedTypes.add(Class.class);
-		allowedTypes.add(URL.class);
-		allowedTypes.add(boolean.class);
+	/**
+	 * @return the type of each value of a vararg, the component type of an array field or the type parameter
+	 * of an Iterable field unless the annotation gives another.
+	 */
+	static Class<?> varargType(Field field, Arg argumentAnnotations) {
+		if(argumentAnnotations.type() == String.class && field.getType().isArray()) {
+			return field.getType().getComponentType();
+		}
+		if(argumentAnnotations.type() == String.class && field.getType() == Iterable.class 
+				&& field.getGenericType() instanceof ParameterizedType) {
+			Type valueType = ((ParameterizedType)field.getGenericType()).getActualTypeArguments()[0];
+			if(valueType instanceof Class) {
+				return (Class<?>)valueType;
+			}
+		}
+		return argumentAnnotations.type();
 	}
-
-	@SuppressWarnings("static-access") // marshal from apache commons cli
+	
+	/**
+	 * Builds the option with its constructor rather than {@link org.apache.commons.cli.OptionBuilder}, whose 
+	 * state is static, so that commands may be loaded lazily by concurrent invocations.
+	 */
   private Option extractOption(Field field, Opt optionAnnotations) {
-	  OptionBuilder builder = OptionBuilder.withDescription(optionAnnotations.description());
-	  
 	  boolean hasArg = !(field.getType().equals(boolean.class) || field.getType().equals(Boolean.class));
-	  builder.hasArg(hasArg);
+	  String longOpt = optionAnnotations.longOpt().trim().equals("") ? null : optionAnnotations.longOpt();
+	  Option option = new Option(optionAnnotations.opt(), longOpt, hasArg, optionAnnotations.description());
 	  
-	  if(!allowedTypes.contains(field.getType())) {
-	  	System.out.println("warning: type " + field.getType() + " not allowed for field " + field.getName());
+	  if(hasArg && !ValueConverters.isSupported(field.getType())) {
+	  	System.out.println("warning: no converter registered for type " + field.getType() + " of field " + field.getName());
 	  }
 	  
 	  if(hasArg) {
 	  	if(optionAnnotations.argName().trim().equals("")) {
-	  		builder.withArgName(field.getType().getSimpleName().toLowerCase());
+	  		Class<?> valueType = field.getType().isArray() ? field.getType().getComponentType() : field.getType();
+	  		option.setArgName(valueType.getSimpleName().toLowerCase());
 	  	} else {
-	  		builder.withArgName(optionAnnotations.argName());
+	  		option.setArgName(optionAnnotations.argName());
 	  	}
 	  }
 	  
-	  if(!optionAnnotations.longOpt().trim().equals("")) {
-	  	builder.withLongOpt(optionAnnotations.longOpt());
-	  }
-	  
-	  builder.isRequired(optionAnnotations.required());
-	  builder.withType(field.getType());
-	  Option option = OptionBuilder.create(optionAnnotations.opt());
+	  option.setRequired(optionAnnotations.required());
+	  option.setType(field.getType());
 	  return option;
   }
 }
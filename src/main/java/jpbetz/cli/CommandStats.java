@@ -0,0 +1,101 @@
+package jpbetz.cli;
+
+/**
+ * Snapshot of the metrics of one sub command, taken by {@link CommandMetrics#snapshot()}: how often it was
+ * invoked, with which {@link Invocation.Outcome}, and the distribution of its latency, from looking up the
+ * command to the end of its exec.
+ */
+public final class CommandStats {
+	private final String _name;
+	private final long[] _outcomes;
+	private final long[] _buckets;
+	private final long _latencySum;
+	private final long _maxLatency;
+	private final long _count;
+
+	CommandStats(String name, long[] outcomes, long[] buckets, long latencySum, long maxLatency) {
+		_name = name;
+		_outcomes = outcomes;
+		_buckets = buckets;
+		_latencySum = latencySum;
+		_maxLatency = maxLatency;
+		long count = 0;
+		for(long bucket : buckets) {
+			count += bucket;
+		}
+		_count = count;
+	}
+
+	/**
+	 * @return the command's path, its name preceded by those of the groups it is in, see
+	 * {@link Invocation#getCommandPath()}.
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	public long getInvocations() {
+		long invocations = 0;
+		for(long count : _outcomes) {
+			invocations += count;
+		}
+		return invocations;
+	}
+
+	public long getCount(Invocation.Outcome outcome) {
+		return _outcomes[outcome.ordinal()];
+	}
+
+	/**
+	 * @return the invocations that did not succeed, whatever the reason.
+	 */
+	public long getFailures() {
+		return getInvocations() - getCount(Invocation.Outcome.SUCCESS);
+	}
+
+	public long getLatencySum() {
+		return _latencySum;
+	}
+
+	public long getMaxLatency() {
+		return _maxLatency;
+	}
+
+	public long getMeanLatency() {
+		return _count == 0 ? 0 : _latencySum / _count;
+	}
+
+	/**
+	 * @return the latency in nanoseconds below which the given fraction of invocations completed, interpolated
+	 * within the bucket it falls in, so within a factor of two of the exact value.  0 if there were none.
+	 */
+	public long getLatency(double quantile) {
+		if(_count == 0) return 0;
+		double rank = Math.max(1, Math.ceil(quantile * _count));
+		long below = 0;
+		for(int i = 0; i < _buckets.length; i++) {
+			if(below + _buckets[i] >= rank) {
+				long lower = i == 0 ? 0 : LatencyHistogram.upperBound(i - 1);
+				long upper = Math.min(LatencyHistogram.upperBound(i), _maxLatency);
+				return Math.max(lower, Math.min(upper, lower + (long)((upper - lower) * (rank - below) / _buckets[i])));
+			}
+			below += _buckets[i];
+		}
+		return _maxLatency;
+	}
+
+	/**
+	 * @return the number of invocations in each bucket of the latency histogram, see {@link #getBucketUpperBound(int)}.
+	 */
+	public long[] getBucketCounts() {
+		return _buckets.clone();
+	}
+
+	/**
+	 * @return the exclusive upper bound in nanoseconds of a bucket of the latency histogram, the bounds doubling
+	 * from 1024ns, Long.MAX_VALUE for the last.
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		return LatencyHistogram.upperBound(bucket);
+	}
+}
@@ -1,32 +1,174 @@
 package jpbetz.cli;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+/**
+ * Name, description, options and arguments of a registered {@link Command}.
+ * 
+ * A summary is shared by all invocations of its command and is not modified once loaded, so it may be used
+ * by many threads at once.  Each invocation gets its own command instance from the summary's
+ * {@link CommandFactory}.  The {@link Options} and {@link Arguments} must not be changed after registration.
+ * 
+ * A summary may be created lazily from only its name and description, in which case the command
+ * factory, options and arguments are loaded the first time one of them is requested.  Listing
+ * commands with {@link #getName()} and {@link #getDescription()} never loads the command.
+ */
 public class CommandSummary {
-	private Command _instance;
+	private CommandFactory _factory;
 	private String _name;
 	private String _description;
 	private Options _options;
 	private Arguments _args;
 	private Map<Option, Field> _optionFields;
+	private CommandInjector _injector;
 	
+	private volatile OptionTable _optionTable;
+	
+	private Supplier<CommandSummary> _loader;
+	private volatile boolean _isLoaded;
+	
+	/**
+	 * @deprecated the instance is used by every invocation, which fail while another is running, use
+	 * {@link #CommandSummary(CommandFactory, String, String, Options, Arguments, Map)}.
+	 */
+	@Deprecated
 	public CommandSummary(Command instance, String name, String description, Options options, Arguments args, Map<Option, Field> optionFields) {
-		_instance = instance;
+		this(new SharedInstanceFactory(instance), name, description, options, args, optionFields);
+	}
+	
+	public CommandSummary(CommandFactory factory, String name, String description, Options options, Arguments args, Map<Option, Field> optionFields) {
+		this(factory, name, description, options, args, new FieldInjector(args, toSetters(optionFields)));
+		_optionFields = optionFields;
+	}
+	
+	/**
+	 * @deprecated the instance is used by every invocation, which fail while another is running, use
+	 * {@link #CommandSummary(CommandFactory, String, String, Options, Arguments, CommandInjector)}.
+	 */
+	@Deprecated
+	public CommandSummary(Command instance, String name, String description, Options options, Arguments args, CommandInjector injector) {
+		this(new SharedInstanceFactory(instance), name, description, options, args, injector);
+	}
+	
+	public CommandSummary(CommandFactory factory, String name, String description, Options options, Arguments args, CommandInjector injector) {
+		_factory = factory;
 		_name = name;
 		_description = description;
 		_options = options;
 		_args = args;
-		_optionFields = optionFields;
+		// compile the layout and options at registration rather than on the first invocation
+		if(args != null) {
+			args.getLayout();
+		}
+		if(options != null) {
+			_optionTable = new OptionTable(options);
+		}
+		_optionFields = Collections.emptyMap();
+		_injector = injector;
+		_isLoaded = true;
+	}
+	
+	/**
+	 * Creates a summary that is loaded on first use.
+	 * 
+	 * @param loader provides the loaded summary, the name and description of which are ignored. 
+	 * May return null if the command cannot be loaded.
+	 */
+	public CommandSummary(String name, String description, Supplier<CommandSummary> loader) {
+		_name = name;
+		_description = description;
+		_loader = loader;
+		_isLoaded = false;
+	}
+	
+	/**
+	 * Hands the one given instance to each invocation in turn.  An invocation starting while another holds
+	 * the instance fails rather than having its options injected into the fields the other is using.
+	 */
+	private static class SharedInstanceFactory implements CommandFactory {
+		private final Command _instance;
+		private final AtomicBoolean _isInUse = new AtomicBoolean();
+		
+		SharedInstanceFactory(Command instance) {
+			_instance = instance;
+		}
+		
+		@Override
+		public Command newInstance() {
+			if(!_isInUse.compareAndSet(false, true)) {
+				throw new IllegalStateException("Command instance " + _instance.getClass().getName()
+						+ " is in use by another invocation, register the command with a CommandFactory to invoke it concurrently");
+			}
+			return _instance;
+		}
+		
+		@Override
+		public void release(Command instance) {
+			_isInUse.set(false);
+		}
 	}
 	
+	private static Map<Option, FieldSetter> toSetters(Map<Option, Field> optionFields) {
+		Map<Option, FieldSetter> setters = new HashMap<Option, FieldSetter>();
+		for(Map.Entry<Option, Field> entry : optionFields.entrySet()) {
+			setters.put(entry.getKey(), new ReflectiveFieldSetter(entry.getValue()));
+		}
+		return setters;
+	}
+	
+	private void load() {
+		if(_isLoaded) return;
+		synchronized(this) {
+			if(_isLoaded) return;
+			CommandSummary loaded = _loader.get();
+			if(loaded == null) {
+				throw new IllegalStateException("Unable to load command: " + _name);
+			}
+			_factory = loaded.getFactory();
+			_options = loaded.getOptions();
+			_args = loaded.getArgs();
+			_optionFields = loaded.getOptionFields();
+			_injector = loaded.getInjector();
+			_optionTable = loaded._optionTable;
+			_loader = null;
+			_isLoaded = true;
+		}
+	}
+	
+	public boolean isLoaded() {
+		return _isLoaded;
+	}
+	
+	/**
+	 * @return a new instance of the command, or the instance the summary was created with.
+	 * @deprecated commands are instantiated for each invocation, use {@link #getFactory()}.
+	 */
+	@Deprecated
 	public Command getInstance() {
-    return _instance;
+		CommandFactory factory = getFactory();
+		if(factory instanceof SharedInstanceFactory) {
+			return ((SharedInstanceFactory)factory)._instance;
+		}
+		try {
+			return factory.newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to create command: " + _name, e);
+		}
   }
 	
+	public CommandFactory getFactory() {
+		load();
+		return _factory;
+	}
+	
 	public String getName() {
     return _name;
   }
@@ -36,14 +178,64 @@ public class CommandSummary {
   }
 	
 	public Options getOptions() {
+		load();
     return _options;
   }
 	
+	/**
+	 * @return the compiled options, compiled on first use if the options were not known at registration.
+	 */
+	OptionTable getOptionTable() {
+		OptionTable table = _optionTable;
+		if(table == null) {
+			// compiling twice from racing threads is harmless, both tables are equal
+			table = new OptionTable(getOptions());
+			_optionTable = table;
+		}
+		return table;
+	}
+	
+	/**
+	 * @return a key for looking up the option in the {@link CommandContext} of any invocation of this command.
+	 * @throws IllegalArgumentException if the command has no such option.
+	 */
+	public <T> ContextKey<T> getOptionKey(String opt, Class<T> type) {
+		int slot = getOptionTable().slotOf(opt);
+		if(slot == OptionTable.NOT_FOUND) {
+			throw new IllegalArgumentException("Command " + _name + " has no option " + opt);
+		}
+		return new ContextKey<T>(ContextKey.OPTION, slot, opt, type);
+	}
+	
+	/**
+	 * @return a key for looking up the argument in the {@link CommandContext} of any invocation of this command.
+	 * @throws IllegalArgumentException if the command has no such argument.
+	 */
+	public <T> ContextKey<T> getArgKey(String argName, Class<T> type) {
+		Arguments args = getArgs();
+		Argument arg = args.getArg(argName);
+		if(arg == null) {
+			throw new IllegalArgumentException("Command " + _name + " has no argument " + argName);
+		}
+		return new ContextKey<T>(ContextKey.ARGUMENT, args.getLayout().slotOf(arg), argName, type);
+	}
+	
 	public Arguments getArgs() {
+		load();
 	  return _args;
   }
 	
+	/**
+	 * @return the option fields of a command registered by class, empty for commands built from a
+	 * {@link CommandDescriptor}.
+	 */
 	public Map<Option, Field> getOptionFields() {
+		load();
 	  return _optionFields;
   }
-}
\ No newline at end of file
+	
+	public CommandInjector getInjector() {
+		load();
+		return _injector;
+	}
+}
@@ -0,0 +1,205 @@
+package jpbetz.cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of sub commands, or groups of them, by name, for dispatch.  Names are matched ignoring case and surrounding
+ * whitespace, without copying the name looked up.
+ *
+ * Each node keeps its children's characters in a sorted array, searched by bisection, and counts the
+ * commands below it, so a prefix names a single command exactly when its node counts one.  Names similar
+ * to one that is not found are searched for by computing the edit distance row by row down the trie, skipping
+ * any subtree whose row already exceeds the distance allowed, so most names are never visited.
+ */
+class CommandTrie<T> {
+	private static final char[] NO_CHARS = new char[0];
+	private static final Node<?>[] NO_NODES = new Node<?>[0];
+
+	private final Node<T> _root = new Node<T>();
+
+	void put(String name, T value) {
+		int start = start(name);
+		int end = end(name);
+		Node<T> node = _root;
+		List<Node<T>> path = new ArrayList<Node<T>>(end - start + 1);
+		path.add(_root);
+		for(int i = start; i < end; i++) {
+			node = node.getOrAddChild(Character.toLowerCase(name.charAt(i)));
+			path.add(node);
+		}
+		if(node._value == null) {
+			for(Node<T> parent : path) {
+				parent._count++;
+			}
+		}
+		node._name = name;
+		node._value = value;
+	}
+
+	/**
+	 * @return the value of the name, or null if there is none.
+	 */
+	T get(String name) {
+		Node<T> node = find(name);
+		return node != null ? node._value : null;
+	}
+
+	/**
+	 * @return the value of the name, or of the only name it is a prefix of, or null if there is none.
+	 */
+	T getByPrefix(String name) {
+		Node<T> node = find(name);
+		if(node == null || node == _root) return null;
+		if(node._value != null) return node._value;
+		if(node._count != 1) return null;
+		while(node._value == null) {
+			node = node.getChild(0);
+		}
+		return node._value;
+	}
+
+	/**
+	 * @return up to the given number of names starting with the prefix, in order.
+	 */
+	List<String> withPrefix(String prefix, int limit) {
+		List<String> names = new ArrayList<String>();
+		Node<T> node = find(prefix);
+		if(node != null) {
+			collect(node, names, limit);
+		}
+		return names;
+	}
+
+	private static void collect(Node<?> node, List<String> names, int limit) {
+		if(node._value != null && names.size() < limit) {
+			names.add(node._name);
+		}
+		for(int i = 0; i < node._size && names.size() < limit; i++) {
+			collect(node.getChild(i), names, limit);
+		}
+	}
+
+	/**
+	 * @return up to the given number of names within the edit distance of the name, closest first.
+	 */
+	List<String> suggest(String name, int maxDistance, int limit) {
+		int start = start(name);
+		int end = end(name);
+		char[] word = new char[end - start];
+		for(int i = start; i < end; i++) {
+			word[i - start] = Character.toLowerCase(name.charAt(i));
+		}
+		int[] row = new int[word.length + 1];
+		for(int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		List<Match> matches = new ArrayList<Match>();
+		for(int i = 0; i < _root._size; i++) {
+			search(_root.getChild(i), _root._chars[i], word, row, maxDistance, matches);
+		}
+		Collections.sort(matches, new Comparator<Match>() {
+			@Override
+			public int compare(Match a, Match b) {
+				return a._distance != b._distance ? a._distance - b._distance : a._name.compareTo(b._name);
+			}
+		});
+		List<String> names = new ArrayList<String>();
+		for(int i = 0; i < matches.size() && i < limit; i++) {
+			names.add(matches.get(i)._name);
+		}
+		return names;
+	}
+
+	private static void search(Node<?> node, char c, char[] word, int[] previous, int maxDistance, List<Match> matches) {
+		int[] row = new int[previous.length];
+		row[0] = previous[0] + 1;
+		int min = row[0];
+		for(int i = 1; i < row.length; i++) {
+			int cost = Math.min(row[i - 1], previous[i]) + 1;
+			row[i] = Math.min(cost, previous[i - 1] + (word[i - 1] == c ? 0 : 1));
+			min = Math.min(min, row[i]);
+		}
+		if(node._value != null && row[word.length] <= maxDistance) {
+			matches.add(new Match(node._name, row[word.length]));
+		}
+		if(min <= maxDistance) {
+			for(int i = 0; i < node._size; i++) {
+				search(node.getChild(i), node._chars[i], word, row, maxDistance, matches);
+			}
+		}
+	}
+
+	private Node<T> find(String name) {
+		int end = end(name);
+		Node<T> node = _root;
+		for(int i = start(name); i < end && node != null; i++) {
+			node = node.getChild(Character.toLowerCase(name.charAt(i)));
+		}
+		return node;
+	}
+
+	private static int start(String name) {
+		int start = 0;
+		while(start < name.length() && name.charAt(start) <= ' ') start++;
+		return start;
+	}
+
+	private static int end(String name) {
+		int end = name.length();
+		while(end > 0 && name.charAt(end - 1) <= ' ') end--;
+		return Math.max(end, start(name));
+	}
+
+	private static final class Match {
+		private final String _name;
+		private final int _distance;
+
+		Match(String name, int distance) {
+			_name = name;
+			_distance = distance;
+		}
+	}
+
+	private static final class Node<T> {
+		private char[] _chars = NO_CHARS;
+		private Node<?>[] _children = NO_NODES;
+		private int _size;
+		private int _count;
+		private String _name;
+		private T _value;
+
+		@SuppressWarnings("unchecked") // all nodes of a trie hold the same type
+		Node<T> getChild(int index) {
+			return (Node<T>)_children[index];
+		}
+
+		Node<T> getChild(char c) {
+			int index = Arrays.binarySearch(_chars, 0, _size, c);
+			return index >= 0 ? getChild(index) : null;
+		}
+
+		Node<T> getOrAddChild(char c) {
+			int index = Arrays.binarySearch(_chars, 0, _size, c);
+			if(index >= 0) {
+				return getChild(index);
+			}
+			index = -index - 1;
+			if(_size == _chars.length) {
+				int capacity = Math.max(2, _size * 2);
+				_chars = Arrays.copyOf(_chars, capacity);
+				_children = Arrays.copyOf(_children, capacity);
+			}
+			System.arraycopy(_chars, index, _chars, index + 1, _size - index);
+			System.arraycopy(_children, index, _children, index + 1, _size - index);
+			Node<T> child = new Node<T>();
+			_chars[index] = c;
+			_children[index] = child;
+			_size++;
+			return child;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package jpbetz.cli;
+
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * {@link ArgumentParser} using commons-cli's {@link GnuParser}, the default.
+ */
+public class CommonsArgumentParser implements ArgumentParser {
+	
+	@Override
+	public ParsedCommandLine parse(CommandSummary command, String[] args) throws ParseException {
+		// GnuParser keeps state while parsing, so one is needed per invocation
+		return wrap(new GnuParser().parse(command.getOptions(), args));
+	}
+	
+	static ParsedCommandLine wrap(final CommandLine commandLine) {
+		return new ParsedCommandLine() {
+			@Override
+			public boolean hasOption(String opt) {
+				return commandLine.hasOption(opt);
+			}
+			
+			@Override
+			public String getOptionValue(String opt) {
+				return commandLine.getOptionValue(opt);
+			}
+			
+			@Override
+			public String[] getOptionValues(String opt) {
+				return commandLine.getOptionValues(opt);
+			}
+			
+			@Override
+			public Option[] getOptions() {
+				return commandLine.getOptions();
+			}
+			
+			@SuppressWarnings("unchecked") // marshall from apache commons cli
+			@Override
+			public List<String> getArgList() {
+				return commandLine.getArgList();
+			}
+			
+			@Override
+			public String[] getArgs() {
+				return commandLine.getArgs();
+			}
+		};
+	}
+}
@@ -0,0 +1,26 @@
+package jpbetz.cli;
+
+import java.io.PrintWriter;
+
+/**
+ * Prints a completion script for bash, zsh or fish, generated by {@link CompletionGenerator}.  Added to a
+ * command set by {@link CommandSet#addCompletionCommand()}.
+ */
+public class CompletionCommand implements Command {
+	public static final String NAME = "completion";
+	public static final String DESCRIPTION = "Print the completion script for bash, zsh or fish";
+	
+	@Arg(name="shell")
+	CompletionGenerator.Shell shell;
+	
+	private final CommandSet _commandSet;
+	
+	public CompletionCommand(CommandSet commandSet) {
+		_commandSet = commandSet;
+	}
+	
+	@Override
+	public void exec(CommandContext commandLine) throws CommandError, Exception {
+		new CompletionGenerator(_commandSet).write(shell, new PrintWriter(commandLine.getEnvironment().getOut()));
+	}
+}
@@ -0,0 +1,295 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.cli.Option;
+
+/**
+ * Generates static completion scripts for bash, zsh and fish from the sub commands of a {@link CommandSet},
+ * so completing a command line never starts a JVM.  The scripts complete sub command names, short and long
+ * options, the values of enum options and arguments, and file names for options and arguments that are
+ * files, such as File, Path and InputStream.
+ *
+ * Scripts are usually generated once, when the application is installed, with the command added by
+ * {@link CommandSet#addCompletionCommand()}:
+ *
+ * <pre>
+ *   bullhorn completion bash &gt; /etc/bash_completion.d/bullhorn
+ * </pre>
+ *
+ * Every sub command is loaded to read its options, including those registered by class name.  Groups are
+ * completed by name only, their commands are not loaded.
+ */
+public class CompletionGenerator {
+	public enum Shell { BASH, ZSH, FISH }
+
+	private final String _applicationName;
+	private final String _functionName;
+	private final Collection<CommandSummary> _commands;
+	private final Collection<CommandGroup> _groups;
+
+	public CompletionGenerator(CommandSet commandSet) {
+		_applicationName = commandSet._applicationName;
+		_functionName = "_" + _applicationName.replaceAll("[^A-Za-z0-9_]", "_") + "_complete";
+		_commands = commandSet._subCommands.values();
+		_groups = commandSet._groups.values();
+	}
+
+	public void write(Shell shell, PrintWriter out) {
+		switch(shell) {
+		case BASH:
+			writeBash(out);
+			break;
+		case ZSH:
+			writeZsh(out);
+			break;
+		default:
+			writeFish(out);
+		}
+		out.flush();
+	}
+
+	private void writeBash(PrintWriter out) {
+		out.println("# bash completion for " + _applicationName + ", generated by cli-util");
+		out.println(_functionName + "() {");
+		out.println("  local cur=\"${COMP_WORDS[COMP_CWORD]}\" prev=\"${COMP_WORDS[COMP_CWORD-1]}\" i n=0");
+		out.println("  if [[ $COMP_CWORD -eq 1 ]]; then");
+		out.println("    COMPREPLY=($(compgen -W \"help " + commandNames() + "\" -- \"$cur\"))");
+		out.println("    return");
+		out.println("  fi");
+		out.println("  case \"${COMP_WORDS[1]}\" in");
+		out.println("    help)");
+		out.println("      [[ $COMP_CWORD -eq 2 ]] && COMPREPLY=($(compgen -W \"" + commandNames() + "\" -- \"$cur\"))");
+		out.println("      ;;");
+		for(CommandSummary command : _commands) {
+			out.println("    " + command.getName() + ")");
+			StringBuilder valueOptions = new StringBuilder();
+			StringBuilder allOptions = new StringBuilder();
+			out.println("      case \"$prev\" in");
+			for(Option option : options(command)) {
+				String names = "-" + option.getOpt() + (option.getLongOpt() != null ? "|--" + option.getLongOpt() : "");
+				allOptions.append(allOptions.length() > 0 ? " " : "").append("-").append(option.getOpt());
+				if(option.getLongOpt() != null) {
+					allOptions.append(" --").append(option.getLongOpt());
+				}
+				if(option.hasArg()) {
+					valueOptions.append(valueOptions.length() > 0 ? "|" : "").append(names);
+					out.println("        " + names + ") " + bashValues(option.getType()) + "; return ;;");
+				}
+			}
+			out.println("      esac");
+			out.println("      if [[ \"$cur\" == -* ]]; then");
+			out.println("        COMPREPLY=($(compgen -W \"" + allOptions + "\" -- \"$cur\"))");
+			out.println("        return");
+			out.println("      fi");
+			out.println("      for ((i=2; i<COMP_CWORD; i++)); do");
+			out.println("        case \"${COMP_WORDS[i]}\" in");
+			if(valueOptions.length() > 0) {
+				out.println("          " + valueOptions + ") ((i++)) ;;");
+			}
+			out.println("          -*) ;;");
+			out.println("          *) ((n++)) ;;");
+			out.println("        esac");
+			out.println("      done");
+			out.println("      case $n in");
+			int position = 0;
+			for(Argument argument : command.getArgs().getArguments()) {
+				out.println("        " + (argument.isVararg() ? "*" : String.valueOf(position++)) + ") " + bashValues(argument.getType()) + " ;;");
+			}
+			out.println("      esac");
+			out.println("      ;;");
+		}
+		out.println("  esac");
+		out.println("}");
+		out.println("complete -o filenames -F " + _functionName + " " + _applicationName);
+	}
+
+	private static String bashValues(Object type) {
+		if(isFile(type)) {
+			return "COMPREPLY=($(compgen -f -- \"$cur\"))";
+		}
+		String values = enumValues(type);
+		if(values != null) {
+			return "COMPREPLY=($(compgen -W \"" + values + "\" -- \"$cur\"))";
+		}
+		return "COMPREPLY=()";
+	}
+
+	private void writeZsh(PrintWriter out) {
+		out.println("#compdef " + _applicationName);
+		out.println("# zsh completion for " + _applicationName + ", generated by cli-util");
+		out.println(_functionName + "() {");
+		out.println("  local -a commands");
+		out.println("  commands=(");
+		out.println("    'help:Print the help of a command'");
+		for(CommandSummary command : _commands) {
+			out.println("    " + zshQuote(command.getName().replace(":", "\\:") + ":" + nonNull(command.getDescription())));
+		}
+		for(CommandGroup group : _groups) {
+			out.println("    " + zshQuote(group.getName().replace(":", "\\:") + ":" + nonNull(group.getDescription())));
+		}
+		out.println("  )");
+		out.println("  if (( CURRENT == 2 )); then");
+		out.println("    _describe 'command' commands");
+		out.println("    return");
+		out.println("  fi");
+		out.println("  local command=$words[2]");
+		out.println("  shift words");
+		out.println("  (( CURRENT-- ))");
+		out.println("  case $command in");
+		out.println("    help)");
+		out.println("      _describe 'command' commands");
+		out.println("      ;;");
+		for(CommandSummary command : _commands) {
+			out.println("    " + command.getName() + ")");
+			out.print("      _arguments -s");
+			for(Option option : options(command)) {
+				String description = "[" + zshEscape(nonNull(option.getDescription())) + "]";
+				String value = option.hasArg() ? ":" + zshEscape(argName(option)) + ":" + zshAction(option.getType()) : "";
+				if(option.getLongOpt() != null) {
+					out.print(" \\\n        " + zshQuote("(-" + option.getOpt() + " --" + option.getLongOpt() + ")")
+							+ "{-" + option.getOpt() + ",--" + option.getLongOpt() + "}" + zshQuote(description + value));
+				} else {
+					out.print(" \\\n        " + zshQuote("-" + option.getOpt() + description + value));
+				}
+			}
+			for(Argument argument : command.getArgs().getArguments()) {
+				String spec = (argument.isVararg() ? "*" : "") + (argument.isRequired() || argument.isVararg() ? ":" : "::")
+						+ zshEscape(argument.getArgName()) + ":" + zshAction(argument.getType());
+				out.print(" \\\n        " + zshQuote(spec));
+			}
+			out.println();
+			out.println("      ;;");
+		}
+		out.println("  esac");
+		out.println("}");
+		out.println("compdef " + _functionName + " " + _applicationName);
+	}
+
+	private static String zshAction(Object type) {
+		if(isFile(type)) {
+			return "_files";
+		}
+		String values = enumValues(type);
+		return values != null ? "(" + values + ")" : " ";
+	}
+
+	private static String zshEscape(String text) {
+		return text.replace("\\", "\\\\").replace(":", "\\:").replace("[", "\\[").replace("]", "\\]");
+	}
+
+	private static String zshQuote(String text) {
+		return "'" + text.replace("'", "'\\''") + "'";
+	}
+
+	private void writeFish(PrintWriter out) {
+		String complete = "complete -c " + _applicationName;
+		out.println("# fish completion for " + _applicationName + ", generated by cli-util");
+		out.println(complete + " -f");
+		out.println(complete + " -n __fish_use_subcommand -a help -d 'Print the help of a command'");
+		for(CommandSummary command : _commands) {
+			out.println(complete + " -n __fish_use_subcommand -a " + command.getName() + " -d " + fishQuote(nonNull(command.getDescription())));
+		}
+		for(CommandGroup group : _groups) {
+			out.println(complete + " -n __fish_use_subcommand -a " + group.getName() + " -d " + fishQuote(nonNull(group.getDescription())));
+		}
+		out.println(complete + " -n '__fish_seen_subcommand_from help' -a " + fishQuote(commandNames()));
+		for(CommandSummary command : _commands) {
+			String condition = complete + " -n '__fish_seen_subcommand_from " + command.getName() + "'";
+			for(Option option : options(command)) {
+				StringBuilder line = new StringBuilder(condition).append(" -s ").append(option.getOpt());
+				if(option.getLongOpt() != null) {
+					line.append(" -l ").append(option.getLongOpt());
+				}
+				if(option.hasArg()) {
+					String values = enumValues(option.getType());
+					if(isFile(option.getType())) {
+						line.append(" -r -F");
+					} else if(values != null) {
+						line.append(" -x -a ").append(fishQuote(values));
+					} else {
+						line.append(" -x");
+					}
+				}
+				line.append(" -d ").append(fishQuote(nonNull(option.getDescription())));
+				out.println(line);
+			}
+			List<String> values = new ArrayList<String>();
+			boolean hasFiles = false;
+			for(Argument argument : command.getArgs().getArguments()) {
+				hasFiles |= isFile(argument.getType());
+				String enumValues = enumValues(argument.getType());
+				if(enumValues != null) {
+					values.add(enumValues);
+				}
+			}
+			if(hasFiles) {
+				out.println(condition + " -F");
+			}
+			if(!values.isEmpty()) {
+				out.println(condition + " -a " + fishQuote(String.join(" ", values)));
+			}
+		}
+	}
+
+	private static String fishQuote(String text) {
+		return "'" + text.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	private String commandNames() {
+		StringBuilder names = new StringBuilder();
+		for(CommandSummary command : _commands) {
+			names.append(names.length() > 0 ? " " : "").append(command.getName());
+		}
+		for(CommandGroup group : _groups) {
+			names.append(names.length() > 0 ? " " : "").append(group.getName());
+		}
+		return names.toString();
+	}
+
+	@SuppressWarnings("unchecked") // commons-cli 1.2 returns a raw collection of options
+	private static Collection<Option> options(CommandSummary command) {
+		return command.getOptions().getOptions();
+	}
+
+	private static String argName(Option option) {
+		return option.getArgName() != null ? option.getArgName() : "value";
+	}
+
+	private static String nonNull(String text) {
+		return text != null ? text : "";
+	}
+
+	/**
+	 * @return true if values of the type are file names.
+	 */
+	private static boolean isFile(Object type) {
+		return type == File.class || type == File[].class || type == Path.class || type == FileInputStream.class
+				|| type == InputStream.class || type == FileChannel.class || type == MappedByteBuffer.class;
+	}
+
+	/**
+	 * @return the names of the constants of an enum type, in lower case and separated by spaces, or null if it
+	 * is not an enum.
+	 */
+	private static String enumValues(Object type) {
+		if(!(type instanceof Class) || !((Class<?>)type).isEnum()) {
+			return null;
+		}
+		StringBuilder values = new StringBuilder();
+		for(Object constant : ((Class<?>)type).getEnumConstants()) {
+			values.append(values.length() > 0 ? " " : "").append(((Enum<?>)constant).name().toLowerCase(Locale.ROOT));
+		}
+		return values.toString();
+	}
+}
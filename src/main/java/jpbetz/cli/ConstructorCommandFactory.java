@@ -0,0 +1,37 @@
+package jpbetz.cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+
+/**
+ * {@link CommandFactory} that calls the no argument constructor of a command class.  The constructor is
+ * resolved to a {@link MethodHandle} once.
+ */
+public class ConstructorCommandFactory implements CommandFactory {
+	private final MethodHandle _constructor;
+	
+	public ConstructorCommandFactory(Class<? extends Command> commandClass) throws NoSuchMethodException {
+		Constructor<? extends Command> constructor = commandClass.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		try {
+			_constructor = MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Command.class));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to construct " + commandClass, e);
+		}
+	}
+	
+	@Override
+	public Command newInstance() throws Exception {
+		try {
+			return (Command)_constructor.invokeExact();
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package jpbetz.cli;
+
+/**
+ * Handle to an option or argument of a command, for looking up its value in a {@link CommandContext} by 
+ * slot rather than by name.  Obtained once from the command's {@link CommandSummary}, with
+ * {@link CommandSummary#getOptionKey(String, Class)} or {@link CommandSummary#getArgKey(String, Class)}, 
+ * and valid for every invocation of that command.
+ *
+ * @param <T> type of the converted value.
+ */
+public final class ContextKey<T> {
+	static final int OPTION = 0;
+	static final int ARGUMENT = 1;
+	
+	final int _kind;
+	final int _slot;
+	final String _name;
+	private final Class<T> _type;
+	
+	ContextKey(int kind, int slot, String name, Class<T> type) {
+		_kind = kind;
+		_slot = slot;
+		_name = name;
+		_type = type;
+	}
+	
+	public String getName() {
+		return _name;
+	}
+	
+	public Class<T> getType() {
+		return _type;
+	}
+	
+	public boolean isOption() {
+		return _kind == OPTION;
+	}
+	
+	@Override
+	public String toString() {
+		return (isOption() ? "option " : "argument ") + _name;
+	}
+}
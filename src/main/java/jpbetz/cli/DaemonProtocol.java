@@ -0,0 +1,119 @@
+package jpbetz.cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by {@link CommandServer} and {@link CommandClient}.
+ * 
+ * The client sends the argument count and arguments, the working directory, the environment variable 
+ * count and each name and value, all strings as a length prefixed UTF-8 byte array.  It then streams stdin
+ * as {@link #STDIN} frames, ending with an empty frame.  The server streams {@link #STDOUT} and 
+ * {@link #STDERR} frames back and ends with an {@link #EXIT} frame holding the exit status.
+ * 
+ * A frame is a type byte followed by an int length and that many bytes, except {@link #EXIT} which is 
+ * followed only by the int status.
+ */
+final class DaemonProtocol {
+	static final byte STDIN = 'I';
+	static final byte STDOUT = 'O';
+	static final byte STDERR = 'E';
+	static final byte EXIT = 'X';
+	
+	static final int BUFFER_SIZE = 64 * 1024;
+	
+	private DaemonProtocol() {}
+	
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	static void writeFrame(DataOutputStream out, byte type, byte[] b, int off, int len) throws IOException {
+		synchronized(out) {
+			out.writeByte(type);
+			out.writeInt(len);
+			out.write(b, off, len);
+		}
+	}
+	
+	/**
+	 * Streams over a channel that, unlike those from {@link java.nio.channels.Channels}, may be read and
+	 * written by different threads at the same time.
+	 */
+	static InputStream newInputStream(final ByteChannel channel) {
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(len == 0) return 0;
+				return channel.read(ByteBuffer.wrap(b, off, len));
+			}
+		};
+	}
+	
+	static OutputStream newOutputStream(final ByteChannel channel) {
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte)b }, 0, 1);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Writes everything written to it as frames of the given type.
+	 */
+	static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream _out;
+		private final byte _type;
+		
+		FrameOutputStream(DataOutputStream out, byte type) {
+			_out = out;
+			_type = type;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte)b }, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(len > 0) {
+				writeFrame(_out, _type, b, off, len);
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			_out.flush();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package jpbetz.cli;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * {@link CommandInjector} that writes each option and argument through the {@link FieldSetter}
+ * registered for it.
+ * 
+ * The options and arguments are compiled into arrays when the injector is created, one slot per
+ * field, along with how each slot is to be set.  Injecting a command is then a pass over the slots with no
+ * map lookups.  int, long, double and boolean fields are parsed and set without boxing, by the
+ * {@link ValueConverter} resolved for each when the injector is created.  Array fields of varargs and of
+ * repeated options receive all their values, converted in one pass, into int[], long[] and double[] fields
+ * without boxing.  An Iterable field of a vararg receives its values converted as they are iterated, so values
+ * given in argument files are read from the files only as the command iterates them.
+ */
+public class FieldInjector implements CommandInjector {
+	private static final int OBJECT = 0;
+	private static final int VALUES = 1;
+	private static final int VARARGS = 2;
+	private static final int FLAG = 3;
+	private static final int INT = 4;
+	private static final int LONG = 5;
+	private static final int DOUBLE = 6;
+	private static final int INT_ARRAY = 7;
+	private static final int LONG_ARRAY = 8;
+	private static final int DOUBLE_ARRAY = 9;
+	private static final int ARRAY = 10;
+	private static final int ITERABLE = 11;
+	
+	private final Option[] _options;
+	private final FieldSetter[] _optionSetters;
+	private final int[] _optionKinds;
+	private final ValueConverter<?>[] _optionConverters;
+	private final Class<?>[] _optionComponentTypes;
+	
+	private final Argument[] _arguments;
+	private final FieldSetter[] _argumentSetters;
+	private final int[] _argumentKinds;
+	private final ValueConverter<?>[] _argumentConverters;
+	private final Class<?>[] _argumentComponentTypes;
+	
+	public FieldInjector(Arguments arguments, Map<Option, FieldSetter> optionSetters) {
+		_options = new Option[optionSetters.size()];
+		_optionSetters = new FieldSetter[optionSetters.size()];
+		_optionKinds = new int[optionSetters.size()];
+		_optionConverters = new ValueConverter<?>[optionSetters.size()];
+		_optionComponentTypes = new Class<?>[optionSetters.size()];
+		int slot = 0;
+		for(Map.Entry<Option, FieldSetter> entry : optionSetters.entrySet()) {
+			Option option = entry.getKey();
+			_options[slot] = option;
+			_optionSetters[slot] = entry.getValue();
+			if(!option.hasArg()) {
+				_optionKinds[slot] = FLAG;
+			} else if(isBulk(option.getType())) {
+				Class<?> componentType = ((Class<?>)option.getType()).getComponentType();
+				_optionKinds[slot] = arrayKindOf(componentType);
+				_optionConverters[slot] = ValueConverters.forType(componentType);
+				_optionComponentTypes[slot] = componentType;
+			} else if(option.hasValueSeparator()) {
+				_optionKinds[slot] = VALUES;
+			} else {
+				_optionKinds[slot] = kindOf(option.getType());
+				_optionConverters[slot] = ValueConverters.forType(option.getType());
+			}
+			slot++;
+		}
+		
+		List<Argument> bound = new ArrayList<Argument>();
+		for(Argument argument : arguments.getArguments()) {
+			if(argument.getSetter() != null) {
+				bound.add(argument);
+			}
+		}
+		_arguments = bound.toArray(new Argument[bound.size()]);
+		_argumentSetters = new FieldSetter[_arguments.length];
+		_argumentKinds = new int[_arguments.length];
+		_argumentConverters = new ValueConverter<?>[_arguments.length];
+		_argumentComponentTypes = new Class<?>[_arguments.length];
+		for(slot = 0; slot < _arguments.length; slot++) {
+			_argumentSetters[slot] = _arguments[slot].getSetter();
+			Argument argument = _arguments[slot];
+			if(argument.isVararg() && argument.getFieldType() != null && argument.getFieldType().isArray()) {
+				Class<?> componentType = argument.getFieldType().getComponentType();
+				_argumentKinds[slot] = arrayKindOf(componentType);
+				_argumentConverters[slot] = ValueConverters.forType(componentType);
+				_argumentComponentTypes[slot] = componentType;
+			} else if(argument.isVararg() && argument.getFieldType() == Iterable.class) {
+				_argumentKinds[slot] = ITERABLE;
+			} else {
+				_argumentKinds[slot] = argument.isVararg() ? VARARGS : kindOf(argument.getType());
+				if(_argumentKinds[slot] != OBJECT) {
+					_argumentConverters[slot] = ValueConverters.forType(argument.getType() != null ? argument.getType() : String.class);
+				}
+			}
+		}
+	}
+	
+	private static int kindOf(Object type) {
+		if(type == int.class) return INT;
+		if(type == long.class) return LONG;
+		if(type == double.class) return DOUBLE;
+		return OBJECT;
+	}
+	
+	private static int arrayKindOf(Class<?> componentType) {
+		if(componentType == int.class) return INT_ARRAY;
+		if(componentType == long.class) return LONG_ARRAY;
+		if(componentType == double.class) return DOUBLE_ARRAY;
+		return ARRAY;
+	}
+	
+	/**
+	 * @return true if an option of the type binds the values of all its occurrences, rather than one value
+	 * converted by a converter registered for the array type, such as File[].
+	 */
+	private static boolean isBulk(Object type) {
+		return type instanceof Class && ((Class<?>)type).isArray() && !ValueConverters.isRegistered(type);
+	}
+	
+	@Override
+	public void inject(Command instance, CommandContext input) throws Exception {
+		injectArguments(instance, input);
+		injectOptions(instance, input);
+	}
+	
+	private void injectOptions(Command instance, CommandContext input) throws Exception {
+		for(int slot = 0; slot < _options.length; slot++) {
+			Option option = _options[slot];
+			if(!input.hasOption(option)) {
+				continue;
+			}
+			FieldSetter setter = _optionSetters[slot];
+			switch(_optionKinds[slot]) {
+			case FLAG:
+				setter.setBoolean(instance, true);
+				break;
+			case VALUES:
+				setter.set(instance, input.getOptionValues(option));
+				break;
+			case INT:
+			case LONG:
+			case DOUBLE:
+				setPrimitive(setter, _optionKinds[slot], _optionConverters[slot], instance, input, input.getOptionValue(option), "option " + option.getOpt());
+				break;
+			case INT_ARRAY:
+			case LONG_ARRAY:
+			case DOUBLE_ARRAY:
+				String[] values = input.getOptionValues(option);
+				setter.set(instance, toArray(_optionKinds[slot], _optionConverters[slot], input, values == null ? Collections.<String>emptyList() : Arrays.asList(values), "option " + option.getOpt()));
+				break;
+			case ARRAY:
+				setter.set(instance, toArray(_optionComponentTypes[slot], input.convertOptionValues(option, _optionConverters[slot])));
+				break;
+			default:
+				setter.set(instance, input.convertOption(option));
+			}
+		}
+	}
+	
+	private void injectArguments(Command instance, CommandContext input) throws Exception {
+		for(int slot = 0; slot < _arguments.length; slot++) {
+			Argument arg = _arguments[slot];
+			FieldSetter setter = _argumentSetters[slot];
+			switch(_argumentKinds[slot]) {
+			case VARARGS:
+				setter.set(instance, input.convertArgValues(arg, _argumentConverters[slot]));
+				break;
+			case ITERABLE:
+				setter.set(instance, input.getArgObjectIterable(arg));
+				break;
+			case INT_ARRAY:
+			case LONG_ARRAY:
+			case DOUBLE_ARRAY:
+				setter.set(instance, toArray(_argumentKinds[slot], _argumentConverters[slot], input, input.getArgValues(arg), "argument " + arg.getArgName()));
+				break;
+			case ARRAY:
+				setter.set(instance, toArray(_argumentComponentTypes[slot], input.convertArgValues(arg, _argumentConverters[slot])));
+				break;
+			case INT:
+			case LONG:
+			case DOUBLE:
+				String text = input.getArgValue(arg);
+				if(text != null) {
+					setPrimitive(setter, _argumentKinds[slot], _argumentConverters[slot], instance, input, text, "argument " + arg.getArgName());
+				}
+				break;
+			default:
+				Object value = input.convertArg(arg);
+				if(value != null) {
+					setter.set(instance, value);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Converts all values into a primitive array in one pass, without boxing.
+	 */
+	private static Object toArray(int kind, ValueConverter<?> converter, CommandContext input, List<String> values, String name) throws ParseException {
+		CommandEnvironment environment = input.getEnvironment();
+		int size = values.size();
+		int i = 0;
+		try {
+			switch(kind) {
+			case INT_ARRAY:
+				int[] ints = new int[size];
+				for(; i < size; i++) ints[i] = converter.convertInt(values.get(i), environment);
+				return ints;
+			case LONG_ARRAY:
+				long[] longs = new long[size];
+				for(; i < size; i++) longs[i] = converter.convertLong(values.get(i), environment);
+				return longs;
+			default:
+				double[] doubles = new double[size];
+				for(; i < size; i++) doubles[i] = converter.convertDouble(values.get(i), environment);
+				return doubles;
+			}
+		} catch (ParseException e) {
+			throw new ParseException("Invalid value for " + name + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the values, converted and kept by the context, in an array of the component type.
+	 */
+	private static Object toArray(Class<?> componentType, List<Object> values) {
+		return values.toArray((Object[])Array.newInstance(componentType, values.size()));
+	}
+	
+	private static void setPrimitive(FieldSetter setter, int kind, ValueConverter<?> converter, Command instance, CommandContext input, String text, String name) throws Exception {
+		CommandEnvironment environment = input.getEnvironment();
+		try {
+			switch(kind) {
+			case INT:
+				setter.setInt(instance, converter.convertInt(text, environment));
+				break;
+			case LONG:
+				setter.setLong(instance, converter.convertLong(text, environment));
+				break;
+			default:
+				setter.setDouble(instance, converter.convertDouble(text, environment));
+			}
+		} catch (ParseException e) {
+			throw new ParseException("Invalid value for " + name + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package jpbetz.cli;
+
+/**
+ * Writes a parsed option or argument value into a field of a {@link Command} instance.
+ * 
+ * Commands registered by class get a {@link ReflectiveFieldSetter} for each annotated field.  
+ * Generated {@link CommandDescriptor}s provide setters that assign the field directly.
+ * 
+ * The primitive setters are used for int, long, double and boolean fields so that values need not be
+ * boxed.  By default they box the value and call {@link #set(Command, Object)}.
+ */
+public interface FieldSetter {
+	void set(Command instance, Object value) throws Exception;
+	
+	default void setBoolean(Command instance, boolean value) throws Exception {
+		set(instance, value);
+	}
+	
+	default void setInt(Command instance, int value) throws Exception {
+		set(instance, value);
+	}
+	
+	default void setLong(Command instance, long value) throws Exception {
+		set(instance, value);
+	}
+	
+	default void setDouble(Command instance, double value) throws Exception {
+		set(instance, value);
+	}
+}
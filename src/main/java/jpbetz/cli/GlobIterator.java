@@ -0,0 +1,293 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterates over arguments, replacing each glob pattern, such as "logs/**&#47;*.log", with the paths of the
+ * files it matches.  Arguments without "*", "?", "[" or "{" are passed through.
+ *
+ * The directory tree under the pattern's fixed prefix is walked by a fork-join pool shared by all patterns,
+ * created by the first one, with one task per directory.  Matches are handed over through a bounded queue as they are found, so the first paths
+ * may be read before the walk finishes and a slow reader holds back the walk rather than the heap.  Matches
+ * are not sorted.  A pattern matching nothing is passed through unchanged, as a shell would.  A pattern
+ * matching more than the limit fails with an {@link IllegalArgumentException} once the paths before it are
+ * read.  Symbolic links to directories are not followed and unreadable directories are skipped.
+ */
+class GlobIterator implements Iterator<String>, AutoCloseable {
+	private static final int BUFFER_SIZE = 4096;
+
+	private final Iterator<String> _args;
+	private final CommandEnvironment _environment;
+	private final int _maxMatches;
+	private Walk _walk;
+	private String _next;
+
+	GlobIterator(Iterator<String> args, CommandEnvironment environment, int maxMatches) {
+		_args = args;
+		_environment = environment;
+		_maxMatches = maxMatches;
+	}
+
+	static boolean isGlob(String value) {
+		for(int i = 0; i < value.length(); i++) {
+			switch(value.charAt(i)) {
+			case '*':
+			case '?':
+			case '[':
+			case '{':
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if any of the arguments is a pattern.
+	 */
+	static boolean hasGlob(Iterable<String> args) {
+		for(String arg : args) {
+			if(isGlob(arg)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while(_next == null) {
+			if(_walk != null) {
+				_next = _walk.take();
+				if(_next == null) {
+					_walk = null;
+				}
+			} else if(_args.hasNext()) {
+				String arg = _args.next();
+				if(isGlob(arg)) {
+					_walk = new Walk(arg, _environment, _maxMatches);
+				} else {
+					_next = arg;
+				}
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String next = _next;
+		_next = null;
+		return next;
+	}
+
+	@Override
+	public void close() {
+		if(_walk != null) {
+			_walk.cancel();
+			_walk = null;
+		}
+		if(_args instanceof AutoCloseable) {
+			try {
+				((AutoCloseable)_args).close();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * The pool walking the trees of all patterns, created on first use so command lines without patterns start
+	 * no threads.  Its threads are daemons and a cancelled walk's tasks return once they see it is cancelled.
+	 */
+	private static final class Pool {
+		static final ForkJoinPool INSTANCE = new ForkJoinPool();
+	}
+
+	/**
+	 * The walk of the tree matched by one pattern.
+	 */
+	private static final class Walk {
+		private static final String DONE = new String("");
+
+		private final String _pattern;
+		private final int _maxMatches;
+		private final Path _prefix;
+		private final Path _root;
+		private final int _maxDepth;
+		private final PathMatcher _matcher;
+		private final PathMatcher _topMatcher;
+		private final BlockingQueue<String> _queue = new ArrayBlockingQueue<String>(BUFFER_SIZE);
+		private final AtomicInteger _matches = new AtomicInteger();
+		private volatile boolean _isCancelled = false;
+		private volatile boolean _isClosed = false;
+		private boolean _isDone = false;
+
+		@SuppressWarnings("serial") // tasks are never serialized
+		Walk(String pattern, CommandEnvironment environment, int maxMatches) {
+			_pattern = pattern;
+			_maxMatches = maxMatches;
+
+			String[] segments = pattern.split(File.separatorChar == '/' ? "/" : "[/\\\\]", -1);
+			int fixed = 0;
+			while(fixed < segments.length - 1 && !isGlob(segments[fixed])) {
+				fixed++;
+			}
+			StringBuilder prefix = new StringBuilder();
+			for(int i = 0; i < fixed; i++) {
+				prefix.append(segments[i]).append('/');
+			}
+			StringBuilder rest = new StringBuilder();
+			for(int i = fixed; i < segments.length; i++) {
+				if(i > fixed) rest.append('/');
+				rest.append(segments[i]);
+			}
+			String glob = rest.toString();
+
+			_prefix = Paths.get(prefix.length() == 0 ? "" : prefix.toString());
+			_root = Paths.get(environment.resolvePath(prefix.length() == 0 ? "." : prefix.toString()));
+			_maxDepth = glob.contains("**") ? Integer.MAX_VALUE : segments.length - fixed;
+			_matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			// "**/" also matches no directories at all, as it does in shells with globstar
+			_topMatcher = glob.startsWith("**/") ? FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3)) : null;
+
+			Pool.INSTANCE.execute(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					try {
+						new DirectoryTask(_root, null, 1).invoke();
+					} finally {
+						finish();
+					}
+				}
+			});
+		}
+
+		/**
+		 * @return the next match, the pattern itself if it matched nothing, or null once the walk is done.
+		 */
+		String take() {
+			if(_isDone) return null;
+			String path;
+			try {
+				path = _queue.take();
+			} catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted expanding " + _pattern, e);
+			}
+			if(path != DONE) {
+				return path;
+			}
+			_isDone = true;
+			if(_matches.get() > _maxMatches) {
+				throw new IllegalArgumentException("Pattern " + _pattern + " matches more than " + _maxMatches + " files");
+			}
+			return _matches.get() == 0 ? _pattern : null;
+		}
+
+		void cancel() {
+			_isClosed = true;
+			_isCancelled = true;
+			_queue.clear();
+		}
+
+		private void emit(Path relative) {
+			if(_matches.incrementAndGet() > _maxMatches) {
+				_isCancelled = true;
+				return;
+			}
+			put(_prefix.resolve(relative).toString());
+		}
+
+		/**
+		 * Hands the reader the end of the walk, also when the walk stopped at the limit, as the reader waits for
+		 * it until it closes the walk.
+		 */
+		private void finish() {
+			try {
+				while(!_queue.offer(DONE, 100, TimeUnit.MILLISECONDS)) {
+					if(_isClosed) return;
+				}
+			} catch (InterruptedException e) {
+				// cancelled by the reader
+			}
+		}
+
+		private void put(final String path) {
+			if(_queue.offer(path)) return;
+			// the reader is behind, wait for room, letting the pool add a thread for other walks meanwhile
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					@Override
+					public boolean block() throws InterruptedException {
+						while(!_isCancelled && !_queue.offer(path, 100, TimeUnit.MILLISECONDS)) {
+							// until there is room or the walk is cancelled
+						}
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable() {
+						return _isCancelled || _queue.offer(path);
+					}
+				});
+			} catch (InterruptedException e) {
+				_isCancelled = true;
+			}
+		}
+
+		@SuppressWarnings("serial") // tasks are never serialized
+		private final class DirectoryTask extends RecursiveAction {
+			private final Path _directory;
+			private final Path _relative;
+			private final int _depth;
+
+			DirectoryTask(Path directory, Path relative, int depth) {
+				_directory = directory;
+				_relative = relative;
+				_depth = depth;
+			}
+
+			@Override
+			protected void compute() {
+				List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+				try(DirectoryStream<Path> entries = Files.newDirectoryStream(_directory)) {
+					for(Path entry : entries) {
+						if(_isCancelled) return;
+						Path relative = _relative == null ? entry.getFileName() : _relative.resolve(entry.getFileName());
+						if(_matcher.matches(relative) || (_topMatcher != null && _topMatcher.matches(relative))) {
+							emit(relative);
+						}
+						if(_depth < _maxDepth && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+							subtasks.add(new DirectoryTask(entry, relative, _depth + 1));
+						}
+					}
+				} catch (IOException e) {
+					// unreadable directories are skipped, as find does
+				}
+				invokeAll(subtasks);
+			}
+		}
+	}
+}
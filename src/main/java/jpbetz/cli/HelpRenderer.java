@@ -0,0 +1,167 @@
+package jpbetz.cli;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.cli.HelpFormatter;
+
+/**
+ * Renders the help of a {@link CommandSet} and of its sub commands.
+ *
+ * Each help text is rendered once per terminal width and kept, so printing help again is a single write
+ * of a cached string.  The width is the COLUMNS environment variable of the invocation, which wrapper
+ * scripts may export, or {@link HelpFormatter#DEFAULT_WIDTH}.  The cache is cleared when commands are added.
+ */
+final class HelpRenderer {
+	private static final int MIN_WIDTH = 40;
+	private static final int NAME_WIDTH = 20;
+	private static final String INDENT = "                       ";
+
+	private final String _applicationName;
+	private final Map<String, CommandSummary> _commands;
+	private final Map<String, CommandGroup> _groups;
+	private final Map<Integer, String> _commandList = new ConcurrentHashMap<Integer, String>();
+	private final Map<String, String> _usages = new ConcurrentHashMap<String, String>();
+
+	HelpRenderer(String applicationName, Map<String, CommandSummary> commands, Map<String, CommandGroup> groups) {
+		_applicationName = applicationName;
+		_commands = commands;
+		_groups = groups;
+	}
+
+	void invalidate() {
+		_commandList.clear();
+		_usages.clear();
+	}
+
+	/**
+	 * Prints the list of commands, after the message if there is one.
+	 */
+	void printCommands(String message) {
+		CommandEnvironment environment = CommandEnvironment.current();
+		String help = getCommandList(width(environment));
+		print(environment.getOut(), message == null ? help : message + "\n" + help);
+	}
+
+	/**
+	 * Prints the message followed by the names of the commands that may have been meant.
+	 */
+	void printSuggestions(String message, List<String> names) {
+		StringBuilder help = new StringBuilder(message).append("\n\nDid you mean one of these?\n");
+		for(String name : names) {
+			help.append("  ").append(name).append('\n');
+		}
+		print(CommandEnvironment.current().getOut(), help.toString());
+	}
+
+	/**
+	 * Prints the usage of the command, after its description or, on stderr, the error message if there is one.
+	 */
+	void printCommand(CommandSummary command, String message) {
+		CommandEnvironment environment = CommandEnvironment.current();
+		String usage = getUsage(command, width(environment));
+		if(message != null) {
+			print(environment.getErr(), command.getName() + ": " + message + "\n");
+			print(environment.getOut(), "\n" + usage);
+		} else {
+			print(environment.getOut(), command.getName() + ": " + command.getDescription() + "\n" + usage);
+		}
+	}
+
+	private static void print(PrintStream out, String text) {
+		out.print(text);
+		out.flush();
+	}
+
+	static int width(CommandEnvironment environment) {
+		String columns = environment.getEnv("COLUMNS");
+		if(columns != null) {
+			try {
+				return Math.max(MIN_WIDTH, Integer.parseInt(columns.trim()));
+			} catch (NumberFormatException e) {
+				// fall back to the default width
+			}
+		}
+		return HelpFormatter.DEFAULT_WIDTH;
+	}
+
+	private String getCommandList(int width) {
+		String help = _commandList.get(width);
+		if(help == null) {
+			help = renderCommandList(width);
+			_commandList.put(width, help);
+		}
+		return help;
+	}
+
+	private String getUsage(CommandSummary command, int width) {
+		String key = width + " " + command.getName();
+		String usage = _usages.get(key);
+		if(usage == null) {
+			usage = renderUsage(command, width);
+			_usages.put(key, usage);
+		}
+		return usage;
+	}
+
+	private String renderCommandList(int width) {
+		StringBuilder help = new StringBuilder();
+		help.append("usage: ").append(_applicationName).append(" <command> [<args>]\n\n");
+		help.append("Available commands are:\n");
+		Map<String, String> descriptions = new TreeMap<String, String>();
+		for(CommandSummary command : _commands.values()) {
+			descriptions.put(command.getName(), command.getDescription());
+		}
+		for(CommandGroup group : _groups.values()) {
+			descriptions.put(group.getName(), group.getDescription());
+		}
+		for(Map.Entry<String, String> command : descriptions.entrySet()) {
+			String name = command.getKey();
+			if(name.length() >= NAME_WIDTH) {
+				name = name.substring(0, NAME_WIDTH - 1);
+			}
+			help.append("  ").append(name);
+			for(int i = name.length(); i < NAME_WIDTH; i++) {
+				help.append(' ');
+			}
+			help.append(' ');
+			appendWrapped(help, command.getValue() == null ? "" : command.getValue(), width - INDENT.length());
+			help.append('\n');
+		}
+		help.append("\nSee '").append(_applicationName).append(" help <command>' for more information on a specific command.\n");
+		return help.toString();
+	}
+
+	/**
+	 * Appends the text wrapped at spaces to lines of at most the given width, continuation lines indented to
+	 * the description column.
+	 */
+	private static void appendWrapped(StringBuilder help, String text, int width) {
+		width = Math.max(width, MIN_WIDTH / 2);
+		while(text.length() > width) {
+			int end = text.lastIndexOf(' ', width);
+			if(end <= 0) {
+				end = width;
+			}
+			help.append(text, 0, end).append('\n').append(INDENT);
+			text = text.substring(end).trim();
+		}
+		help.append(text);
+	}
+
+	private String renderUsage(CommandSummary command, int width) {
+		StringWriter usage = new StringWriter();
+		PrintWriter out = new PrintWriter(usage);
+		HelpFormatter formatter = new HelpFormatter();
+		formatter.printHelp(out, width, _applicationName + " " + command.getName() + " [options] " + command.getArgs().getUsageArgList(),
+				null, command.getOptions(), formatter.getLeftPadding(), formatter.getDescPadding(), null);
+		out.println();
+		out.flush();
+		return usage.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package jpbetz.cli;
+
+import java.util.Arrays;
+
+/**
+ * A completed invocation of a sub command, as reported to {@link InvocationListener}s: the command, its
+ * arguments, the {@link System#nanoTime()} at which each phase ended and the outcome.
+ *
+ * The phases are, in order, finding the command, parsing its command line, binding the parsed values into a
+ * {@link CommandContext}, creating the command and injecting its options and arguments, and running
+ * {@link Command#exec(CommandContext)}.  A phase the invocation failed in ends when it failed, the phases after
+ * it are not reached.
+ */
+public final class Invocation {
+	public enum Phase { LOOKUP, PARSE, BIND, INJECT, EXEC }
+
+	public enum Outcome {
+		/** exec returned, whatever the exit status it set */
+		SUCCESS,
+		/** exec threw a {@link CommandError} */
+		COMMAND_ERROR,
+		/** the command line could not be parsed or its values converted */
+		PARSE_ERROR,
+		/** any other exception, thrown by exec or while creating the command */
+		EXCEPTION
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final CommandSummary _command;
+	private final String _path;
+	private final String[] _args;
+	private final long _start;
+	private final long[] _ends = new long[PHASES.length];
+	private int _reached;
+	private Outcome _outcome;
+	private Throwable _failure;
+	private int _exitStatus;
+
+	Invocation(CommandSummary command, String path, String[] args, long start) {
+		_command = command;
+		_path = path;
+		_args = args;
+		_start = start;
+	}
+
+	/**
+	 * Ends the phase, which is the next phase not yet ended.
+	 */
+	void end(Phase phase) {
+		_reached = phase.ordinal() + 1;
+		_ends[phase.ordinal()] = System.nanoTime();
+	}
+
+	void complete(Outcome outcome, Throwable failure, int exitStatus) {
+		_outcome = outcome;
+		_failure = failure;
+		_exitStatus = exitStatus;
+	}
+
+	public CommandSummary getCommand() {
+		return _command;
+	}
+
+	/**
+	 * @return the names of the groups the command is in and of the command, separated by spaces, such as
+	 * "db migrate", or just the command's name if it is not in a group.
+	 */
+	public String getCommandPath() {
+		return _path;
+	}
+
+	public String[] getArgs() {
+		return _args;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} the invocation started at, before the command was looked up.
+	 */
+	public long getStartTime() {
+		return _start;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} the phase ended at, or 0 if it was not reached.
+	 */
+	public long getEndTime(Phase phase) {
+		return hasReached(phase) ? _ends[phase.ordinal()] : 0;
+	}
+
+	/**
+	 * @return the nanoseconds the phase took, or -1 if it was not reached.
+	 */
+	public long getTime(Phase phase) {
+		if(!hasReached(phase)) return -1;
+		long start = phase.ordinal() == 0 ? _start : _ends[phase.ordinal() - 1];
+		return _ends[phase.ordinal()] - start;
+	}
+
+	/**
+	 * @return the nanoseconds from the start of the invocation to the end of the last phase reached.
+	 */
+	public long getTotalTime() {
+		return _reached == 0 ? 0 : _ends[_reached - 1] - _start;
+	}
+
+	public boolean hasReached(Phase phase) {
+		return phase.ordinal() < _reached;
+	}
+
+	public Outcome getOutcome() {
+		return _outcome;
+	}
+
+	/**
+	 * @return the exception the invocation failed with, or null if it succeeded.
+	 */
+	public Throwable getFailure() {
+		return _failure;
+	}
+
+	public int getExitStatus() {
+		return _exitStatus;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(_path).append(' ').append(Arrays.toString(_args)).append(' ').append(_outcome);
+		for(Phase phase : PHASES) {
+			if(hasReached(phase)) {
+				text.append(' ').append(phase.name().toLowerCase()).append('=').append(getTime(phase)).append("ns");
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,114 @@
+package jpbetz.cli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records the JDK Flight Recorder events of one invocation of a sub command, an event for each phase, see
+ * {@link Invocation.Phase}, and one for the whole invocation.  Only created when the events are enabled with
+ * {@link CommandSet#setFlightRecorderEventsEnabled(boolean)}, and the event classes are only referenced from
+ * here, so the jdk.jfr classes are not loaded otherwise.
+ */
+final class InvocationEvents {
+	private final Invoke _invocation = new Invoke();
+	private PhaseEvent _phase;
+
+	InvocationEvents() {
+		_invocation.begin();
+	}
+
+	/**
+	 * Begins the event of the phase.
+	 */
+	void begin(Invocation.Phase phase) {
+		switch(phase) {
+			case LOOKUP: _phase = new Lookup(); break;
+			case PARSE: _phase = new Parse(); break;
+			case BIND: _phase = new Bind(); break;
+			case INJECT: _phase = new Inject(); break;
+			default: _phase = new Exec(); break;
+		}
+		_phase.begin();
+	}
+
+	/**
+	 * Commits the event of the phase last begun, if it has not been already.
+	 */
+	void end(String command) {
+		if(_phase == null) return;
+		_phase.commit(command);
+		_phase = null;
+	}
+
+	/**
+	 * Commits the event of the whole invocation.
+	 */
+	void complete(String command, Invocation.Outcome outcome, int exitStatus) {
+		_invocation.commit(command, outcome, exitStatus);
+	}
+
+	@Category("cli-util")
+	@StackTrace(false)
+	abstract static class PhaseEvent extends Event {
+		@Label("Command")
+		String command;
+
+		/**
+		 * Commits the event of the phase, if enabled, with the name of the command.
+		 */
+		void commit(String name) {
+			if(shouldCommit()) {
+				command = name;
+				commit();
+			}
+		}
+	}
+
+	@Name("jpbetz.cli.Lookup")
+	@Label("Command Lookup")
+	@Description("Finding the sub command, or group of them, named by a command line")
+	static final class Lookup extends PhaseEvent {}
+
+	@Name("jpbetz.cli.Parse")
+	@Label("Command Parse")
+	@Description("Parsing the command line of a sub command")
+	static final class Parse extends PhaseEvent {}
+
+	@Name("jpbetz.cli.Bind")
+	@Label("Command Bind")
+	@Description("Binding the parsed values of a command line into a CommandContext")
+	static final class Bind extends PhaseEvent {}
+
+	@Name("jpbetz.cli.Inject")
+	@Label("Command Inject")
+	@Description("Creating a sub command and injecting its options and arguments")
+	static final class Inject extends PhaseEvent {}
+
+	@Name("jpbetz.cli.Exec")
+	@Label("Command Exec")
+	@Description("Running a sub command")
+	static final class Exec extends PhaseEvent {}
+
+	@Name("jpbetz.cli.Invocation")
+	@Label("Command Invocation")
+	@Description("A whole invocation of a sub command, from lookup to the end of exec")
+	static final class Invoke extends PhaseEvent {
+		@Label("Outcome")
+		String outcome;
+
+		@Label("Exit Status")
+		int exitStatus;
+
+		void commit(String name, Invocation.Outcome outcome, int exitStatus) {
+			if(shouldCommit()) {
+				this.outcome = outcome.name();
+				this.exitStatus = exitStatus;
+				commit(name);
+			}
+		}
+	}
+}
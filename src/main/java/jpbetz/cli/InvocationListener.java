@@ -0,0 +1,12 @@
+package jpbetz.cli;
+
+/**
+ * Notified of every invocation of a sub command of a {@link CommandSet}, with the time taken by each of its
+ * phases and its outcome.  Added with {@link CommandSet#addInvocationListener(InvocationListener)}.
+ *
+ * Listeners are called on the thread that ran the command, after it completed and its resources were closed,
+ * so they should return quickly.  Command lines naming no command are not reported.
+ */
+public interface InvocationListener {
+	void invoked(Invocation invocation);
+}
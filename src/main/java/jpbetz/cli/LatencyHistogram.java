@@ -0,0 +1,69 @@
+package jpbetz.cli;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Lock free histogram of latencies in nanoseconds, in buckets doubling in width: the first counts latencies
+ * below 1024ns, bucket i those below 2^(10+i)ns and the last any longer.  Each bucket is a {@link LongAdder}, so
+ * threads recording at once update separate cells instead of contending on one counter.
+ */
+final class LatencyHistogram {
+	static final int BUCKETS = 32;
+	private static final int FIRST_BUCKET_BITS = 10;
+
+	private final LongAdder[] _buckets = new LongAdder[BUCKETS];
+	private final LongAdder _sum = new LongAdder();
+	private final LongAccumulator _max = new LongAccumulator(new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	}, 0);
+
+	LatencyHistogram() {
+		for(int i = 0; i < BUCKETS; i++) {
+			_buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		_buckets[bucket(nanos)].increment();
+		_sum.add(nanos);
+		_max.accumulate(nanos);
+	}
+
+	static int bucket(long nanos) {
+		int bucket = 64 - Long.numberOfLeadingZeros(nanos) - FIRST_BUCKET_BITS;
+		return Math.min(Math.max(bucket, 0), BUCKETS - 1);
+	}
+
+	/**
+	 * @return the exclusive upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last.
+	 */
+	static long upperBound(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (FIRST_BUCKET_BITS + bucket);
+	}
+
+	/**
+	 * @return the count of each bucket.  Buckets are read one after the other while other threads may record,
+	 * so the counts are only consistent with each other once recording stops.
+	 */
+	long[] getCounts() {
+		long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = _buckets[i].sum();
+		}
+		return counts;
+	}
+
+	long getSum() {
+		return _sum.sum();
+	}
+
+	long getMax() {
+		return _max.get();
+	}
+}
@@ -0,0 +1,281 @@
+package jpbetz.cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.cli.MissingOptionException;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.UnrecognizedOptionException;
+
+/**
+ * {@link ArgumentParser} that reads the command line in a single pass against the command's options, 
+ * compiled once per command.  Unlike commons-cli's parsers it does not copy the tokens or clone options, 
+ * values and positional arguments are recorded in a few arrays.
+ * 
+ * Accepts what {@link CommonsArgumentParser} does: "-o value", "--option value", "--option=value",
+ * "-ovalue", options interleaved with arguments and "--" ending the options.  It also accepts clustered
+ * flags, "-abc" for "-a -b -c", the last of which may take a value.  Options, arguments and their values
+ * are reported the same way, except that {@link ParsedCommandLine#getOptions()} returns the registered
+ * options rather than copies holding their values.
+ */
+public class NativeArgumentParser implements ArgumentParser {
+	
+	@Override
+	public ParsedCommandLine parse(CommandSummary command, String[] args) throws ParseException {
+		OptionTable table = command.getOptionTable();
+		Result result = new Result(table, args);
+		int index = 0;
+		while(index < args.length) {
+			String token = args[index++];
+			if(token.length() < 2 || token.charAt(0) != '-') {
+				result.addArg(token);
+				continue;
+			}
+			if(token.equals("--")) {
+				while(index < args.length) {
+					result.addArg(args[index++]);
+				}
+				break;
+			}
+			
+			int start = token.charAt(1) == '-' ? 2 : 1;
+			int slot = table.slotOf(token, start, token.length());
+			if(slot != OptionTable.NOT_FOUND) {
+				index = addOption(table, result, slot, null, args, index);
+				continue;
+			}
+			
+			int equals = token.indexOf('=', start);
+			if(equals > start) {
+				slot = table.slotOf(token, start, equals);
+				if(slot != OptionTable.NOT_FOUND) {
+					if(table._maxValues[slot] == 0) {
+						throw new ParseException("Option " + token.substring(0, equals) + " does not take a value");
+					}
+					index = addOption(table, result, slot, token.substring(equals + 1), args, index);
+					continue;
+				}
+			}
+			
+			if(start == 1) {
+				slot = table.slotOf(token, 1, 2);
+				if(slot != OptionTable.NOT_FOUND) {
+					index = addCluster(table, result, token, args, index);
+					continue;
+				}
+			}
+			throw new UnrecognizedOptionException("Unrecognized option: " + token, token);
+		}
+		
+		checkRequired(table, result);
+		return result;
+	}
+	
+	/**
+	 * Adds "-abc", where a is an option.  If a takes a value the rest of the token is its value, otherwise
+	 * each character is a flag, the last of which may take a value.
+	 */
+	private static int addCluster(OptionTable table, Result result, String token, String[] args, int index) throws ParseException {
+		for(int i = 1; i < token.length(); i++) {
+			int slot = table.slotOf(token, i, i + 1);
+			if(slot == OptionTable.NOT_FOUND) {
+				throw new UnrecognizedOptionException("Unrecognized option: -" + token.charAt(i) + " in " + token, token);
+			}
+			if(table._maxValues[slot] > 0) {
+				return addOption(table, result, slot, i + 1 < token.length() ? token.substring(i + 1) : null, args, index);
+			}
+			result.addOption(slot);
+		}
+		return index;
+	}
+	
+	/**
+	 * Adds the option, its inline value if any and as many of the following tokens as it takes values.
+	 * 
+	 * @return the index of the next unread token.
+	 */
+	private static int addOption(OptionTable table, Result result, int slot, String value, String[] args, int index) throws ParseException {
+		result.addOption(slot);
+		int max = table._maxValues[slot];
+		if(max == 0) return index;
+		
+		int count = 0;
+		if(value != null) {
+			count += result.addValues(slot, stripQuotes(value), max);
+		}
+		while(count < max && index < args.length) {
+			String next = args[index];
+			if(next.startsWith("-") && (next.equals("--") || table.slotOf(next) != OptionTable.NOT_FOUND)) {
+				break;
+			}
+			count += result.addValues(slot, stripQuotes(next), max - count);
+			index++;
+		}
+		if(count == 0 && !table._isValueOptional[slot]) {
+			throw new MissingArgumentException(table._options[slot]);
+		}
+		return index;
+	}
+	
+	private static void checkRequired(OptionTable table, Result result) throws MissingOptionException {
+		List<String> missing = null;
+		for(int slot : table._requiredSlots) {
+			if(!result._isPresent[slot]) {
+				if(missing == null) missing = new ArrayList<String>();
+				Option option = table._options[slot];
+				missing.add(option.getOpt() != null ? option.getOpt() : option.getLongOpt());
+			}
+		}
+		if(missing != null) {
+			throw new MissingOptionException(missing);
+		}
+	}
+	
+	/**
+	 * Strips a leading and a trailing double quote, as commons-cli does for option values.
+	 */
+	private static String stripQuotes(String value) {
+		int start = value.startsWith("\"") ? 1 : 0;
+		int end = value.length() > start && value.endsWith("\"") ? value.length() - 1 : value.length();
+		return start == 0 && end == value.length() ? value : value.substring(start, end);
+	}
+	
+	private static class Result implements SlottedCommandLine {
+		private final OptionTable _table;
+		private final boolean[] _isPresent;
+		/** slots of the options given, in the order first given */
+		private final int[] _order;
+		private int _optionCount;
+		
+		private String[] _values;
+		private int[] _valueSlots;
+		private int _valueCount;
+		
+		private final String[] _args;
+		private int _argCount;
+		
+		Result(OptionTable table, String[] args) {
+			_table = table;
+			_isPresent = new boolean[table._options.length];
+			_order = new int[table._options.length];
+			_args = new String[args.length];
+		}
+		
+		void addOption(int slot) {
+			if(!_isPresent[slot]) {
+				_isPresent[slot] = true;
+				_order[_optionCount++] = slot;
+			}
+		}
+		
+		void addArg(String arg) {
+			_args[_argCount++] = arg;
+		}
+		
+		/**
+		 * Adds at most max values, splitting the value on the option's separator if it has one.
+		 * 
+		 * @return the number of values added.
+		 */
+		int addValues(int slot, String value, int max) {
+			char separator = _table._separators[slot];
+			int added = 0;
+			if(separator != 0) {
+				int end;
+				while(added < max - 1 && (end = value.indexOf(separator)) != -1) {
+					addValue(slot, value.substring(0, end));
+					value = value.substring(end + 1);
+					added++;
+				}
+			}
+			addValue(slot, value);
+			return added + 1;
+		}
+		
+		private void addValue(int slot, String value) {
+			if(_values == null) {
+				_values = new String[4];
+				_valueSlots = new int[4];
+			} else if(_valueCount == _values.length) {
+				_values = Arrays.copyOf(_values, _valueCount * 2);
+				_valueSlots = Arrays.copyOf(_valueSlots, _valueCount * 2);
+			}
+			_values[_valueCount] = value;
+			_valueSlots[_valueCount++] = slot;
+		}
+		
+		private int slotOf(String opt) {
+			return opt == null ? OptionTable.NOT_FOUND : _table.slotOf(opt);
+		}
+		
+		@Override
+		public OptionTable getTable() {
+			return _table;
+		}
+		
+		@Override
+		public boolean hasOption(String opt) {
+			return hasOption(slotOf(opt));
+		}
+		
+		@Override
+		public boolean hasOption(int slot) {
+			return slot != OptionTable.NOT_FOUND && _isPresent[slot];
+		}
+		
+		@Override
+		public String getOptionValue(String opt) {
+			return getOptionValue(slotOf(opt));
+		}
+		
+		@Override
+		public String getOptionValue(int slot) {
+			for(int i = 0; i < _valueCount; i++) {
+				if(_valueSlots[i] == slot) return _values[i];
+			}
+			return null;
+		}
+		
+		@Override
+		public String[] getOptionValues(String opt) {
+			return getOptionValues(slotOf(opt));
+		}
+		
+		@Override
+		public String[] getOptionValues(int slot) {
+			int count = 0;
+			for(int i = 0; i < _valueCount; i++) {
+				if(_valueSlots[i] == slot) count++;
+			}
+			if(count == 0) return null;
+			String[] values = new String[count];
+			count = 0;
+			for(int i = 0; i < _valueCount; i++) {
+				if(_valueSlots[i] == slot) values[count++] = _values[i];
+			}
+			return values;
+		}
+		
+		@Override
+		public Option[] getOptions() {
+			Option[] options = new Option[_optionCount];
+			for(int i = 0; i < _optionCount; i++) {
+				options[i] = _table._options[_order[i]];
+			}
+			return options;
+		}
+		
+		@Override
+		public List<String> getArgList() {
+			return Arrays.asList(_args).subList(0, _argCount);
+		}
+		
+		@Override
+		public String[] getArgs() {
+			return Arrays.copyOf(_args, _argCount);
+		}
+	}
+}
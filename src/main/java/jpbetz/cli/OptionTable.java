@@ -0,0 +1,125 @@
+package jpbetz.cli;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * The options of a command compiled when it is registered, one slot per option, with the
+ * {@link ValueConverter} of each.
+ * 
+ * Names are looked up directly in the token they appear in, so parsing does not allocate a substring per 
+ * option.  Single character ASCII names are indexed by character, other names are kept in an open
+ * addressing hash table.
+ */
+final class OptionTable {
+	static final int NOT_FOUND = -1;
+	
+	final Option[] _options;
+	/** the most values each option takes, 0 for flags */
+	final int[] _maxValues;
+	final boolean[] _isValueOptional;
+	/** value separator of each option, 0 if none */
+	final char[] _separators;
+	final int[] _requiredSlots;
+	final ValueConverter<?>[] _converters;
+	
+	private final int[] _charSlots = new int[128];
+	private final String[] _names;
+	private final int[] _nameSlots;
+	
+	@SuppressWarnings("unchecked") // marshall from apache commons cli
+	OptionTable(Options options) {
+		Collection<Option> definitions = options.getOptions();
+		_options = definitions.toArray(new Option[definitions.size()]);
+		_maxValues = new int[_options.length];
+		_isValueOptional = new boolean[_options.length];
+		_separators = new char[_options.length];
+		_converters = new ValueConverter<?>[_options.length];
+		
+		int required = 0;
+		for(int slot = 0; slot < _options.length; slot++) {
+			Option option = _options[slot];
+			if(option.hasArg()) {
+				_maxValues[slot] = option.getArgs() == Option.UNLIMITED_VALUES ? Integer.MAX_VALUE : option.getArgs();
+			} else if(option.hasOptionalArg()) {
+				_maxValues[slot] = Integer.MAX_VALUE;
+			}
+			_isValueOptional[slot] = option.hasOptionalArg();
+			_separators[slot] = option.hasValueSeparator() ? option.getValueSeparator() : 0;
+			if(option.isRequired()) required++;
+			_converters[slot] = ValueConverters.forType(option.getType() != null ? option.getType() : String.class);
+		}
+		_requiredSlots = new int[required];
+		required = 0;
+		for(int slot = 0; slot < _options.length; slot++) {
+			if(_options[slot].isRequired()) _requiredSlots[required++] = slot;
+		}
+		
+		int capacity = 8;
+		while(capacity < _options.length * 4) capacity <<= 1;
+		_names = new String[capacity];
+		_nameSlots = new int[capacity];
+		Arrays.fill(_charSlots, NOT_FOUND);
+		// long names first, so that a short name shadows a long name equal to it as it does in commons-cli
+		for(int slot = 0; slot < _options.length; slot++) {
+			if(_options[slot].getLongOpt() != null) put(_options[slot].getLongOpt(), slot);
+		}
+		for(int slot = 0; slot < _options.length; slot++) {
+			if(_options[slot].getOpt() != null) put(_options[slot].getOpt(), slot);
+		}
+	}
+	
+	private void put(String name, int slot) {
+		if(name.length() == 1 && name.charAt(0) < 128) {
+			_charSlots[name.charAt(0)] = slot;
+		}
+		int mask = _names.length - 1;
+		int index = hash(name, 0, name.length()) & mask;
+		while(_names[index] != null && !_names[index].equals(name)) {
+			index = (index + 1) & mask;
+		}
+		_names[index] = name;
+		_nameSlots[index] = slot;
+	}
+	
+	/**
+	 * @return the slot of the option named by token.substring(start, end), or {@link #NOT_FOUND}.
+	 */
+	int slotOf(String token, int start, int end) {
+		int length = end - start;
+		if(length <= 0) return NOT_FOUND;
+		if(length == 1 && token.charAt(start) < 128) {
+			return _charSlots[token.charAt(start)];
+		}
+		int mask = _names.length - 1;
+		int index = hash(token, start, end) & mask;
+		String name;
+		while((name = _names[index]) != null) {
+			if(name.length() == length && token.regionMatches(start, name, 0, length)) {
+				return _nameSlots[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return NOT_FOUND;
+	}
+	
+	/**
+	 * @return the slot of the option named after stripping leading hyphens, as commons-cli does when looking
+	 * up options, or {@link #NOT_FOUND}.
+	 */
+	int slotOf(String name) {
+		int start = name.startsWith("--") ? 2 : name.startsWith("-") ? 1 : 0;
+		return slotOf(name, start, name.length());
+	}
+	
+	private static int hash(String text, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
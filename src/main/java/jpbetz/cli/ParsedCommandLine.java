@@ -0,0 +1,37 @@
+package jpbetz.cli;
+
+import java.util.List;
+
+import org.apache.commons.cli.Option;
+
+/**
+ * The options and positional arguments found on a command line by an {@link ArgumentParser}.
+ * 
+ * Options may be looked up by their short or long name.  An option given more than once has the values of
+ * each occurrence, in order.
+ */
+public interface ParsedCommandLine {
+	boolean hasOption(String opt);
+	
+	/**
+	 * @return the first value of the option, or null if it was not given or has no value.
+	 */
+	String getOptionValue(String opt);
+	
+	/**
+	 * @return all values of the option, or null if it was not given or has no value.
+	 */
+	String[] getOptionValues(String opt);
+	
+	/**
+	 * @return the options that were given.
+	 */
+	Option[] getOptions();
+	
+	/**
+	 * @return the positional arguments, in order.
+	 */
+	List<String> getArgList();
+	
+	String[] getArgs();
+}
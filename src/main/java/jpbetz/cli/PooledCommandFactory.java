@@ -0,0 +1,37 @@
+package jpbetz.cli;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * {@link CommandFactory} that keeps up to a fixed number of released instances for reuse.  Only
+ * {@link ReusableCommand}s are pooled, they are reset when released.  Other commands are created by the
+ * delegate factory for every invocation.
+ * 
+ * Safe for use by many threads, a pooled instance is only ever handed to one invocation at a time.
+ */
+public class PooledCommandFactory implements CommandFactory {
+	private final CommandFactory _delegate;
+	private final BlockingQueue<Command> _idle;
+	
+	public PooledCommandFactory(CommandFactory delegate, int maxIdle) {
+		_delegate = delegate;
+		_idle = new ArrayBlockingQueue<Command>(maxIdle);
+	}
+	
+	@Override
+	public Command newInstance() throws Exception {
+		Command instance = _idle.poll();
+		return instance != null ? instance : _delegate.newInstance();
+	}
+	
+	@Override
+	public void release(Command instance) {
+		if(instance instanceof ReusableCommand) {
+			((ReusableCommand)instance).reset();
+			_idle.offer(instance);
+		} else {
+			_delegate.release(instance);
+		}
+	}
+}
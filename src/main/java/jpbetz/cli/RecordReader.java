@@ -0,0 +1,118 @@
+package jpbetz.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads UTF-8 records separated by a delimiter byte, such as lines, from a channel without holding more
+ * than one record and one buffer in memory.
+ * 
+ * Input is read in large blocks into a direct buffer, so reads from a file or pipe need no extra copy, and 
+ * scanned for the delimiter a block at a time.  A record is decoded to a String only once it is complete.  When the
+ * delimiter is a newline a trailing carriage return is dropped, and a final record without a delimiter 
+ * is still returned.  Read errors are thrown as {@link UncheckedIOException}.  The channel is not closed.
+ */
+public class RecordReader implements Iterator<String>, Iterable<String> {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final ReadableByteChannel _channel;
+	private final byte _delimiter;
+	private final ByteBuffer _buffer;
+	private byte[] _record = new byte[256];
+	private int _length;
+	private String _next;
+	private boolean _isEof;
+	
+	public RecordReader(ReadableByteChannel channel, byte delimiter) {
+		_channel = channel;
+		_delimiter = delimiter;
+		_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		_buffer.flip();
+	}
+	
+	public static RecordReader lines(ReadableByteChannel channel) {
+		return new RecordReader(channel, (byte)'\n');
+	}
+	
+	public static RecordReader lines(InputStream in) {
+		return lines(Channels.newChannel(in));
+	}
+	
+	@Override
+	public Iterator<String> iterator() {
+		return this;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(_next == null && !_isEof) {
+			try {
+				_next = read();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return _next != null;
+	}
+	
+	@Override
+	public String next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String next = _next;
+		_next = null;
+		return next;
+	}
+	
+	private String read() throws IOException {
+		while(true) {
+			int start = _buffer.position();
+			int limit = _buffer.limit();
+			for(int i = start; i < limit; i++) {
+				if(_buffer.get(i) == _delimiter) {
+					append(i - start);
+					_buffer.get(); // the delimiter
+					return decode();
+				}
+			}
+			append(limit - start);
+			
+			_buffer.clear();
+			int read;
+			do {
+				read = _channel.read(_buffer);
+			} while(read == 0);
+			_buffer.flip();
+			if(read < 0) {
+				_isEof = true;
+				return _length > 0 ? decode() : null;
+			}
+		}
+	}
+	
+	private void append(int count) {
+		if(_length + count > _record.length) {
+			_record = Arrays.copyOf(_record, Math.max(_record.length * 2, _length + count));
+		}
+		_buffer.get(_record, _length, count);
+		_length += count;
+	}
+	
+	private String decode() {
+		int length = _length;
+		if(_delimiter == '\n' && length > 0 && _record[length - 1] == '\r') {
+			length--;
+		}
+		_length = 0;
+		return new String(_record, 0, length, StandardCharsets.UTF_8);
+	}
+}
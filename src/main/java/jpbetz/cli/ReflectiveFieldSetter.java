@@ -0,0 +1,113 @@
+package jpbetz.cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * {@link FieldSetter} for a field found through reflection.  Works for fields of any visibility.
+ * 
+ * The field is resolved to a {@link MethodHandle} once, when the setter is created, so setting a value
+ * does no access checks.  Primitive fields also get an exactly typed handle used by the primitive setters.
+ */
+public class ReflectiveFieldSetter implements FieldSetter {
+	private final Field _field;
+	private final Class<?> _type;
+	private final MethodHandle _setter;
+	private final MethodHandle _primitiveSetter;
+	
+	public ReflectiveFieldSetter(Field field) {
+		_field = field;
+		_field.setAccessible(true);
+		_type = field.getType();
+		
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflectSetter(field);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to set field " + field, e);
+		}
+		if(Modifier.isStatic(field.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, field.getDeclaringClass());
+		}
+		_setter = handle.asType(MethodType.methodType(void.class, Command.class, Object.class));
+		_primitiveSetter = _type.isPrimitive() ? handle.asType(MethodType.methodType(void.class, Command.class, _type)) : null;
+	}
+	
+	public ReflectiveFieldSetter(Class<?> declaringClass, String fieldName) throws NoSuchFieldException {
+		this(declaringClass.getDeclaredField(fieldName));
+	}
+	
+	public Field getField() {
+		return _field;
+	}
+	
+	@Override
+	public void set(Command instance, Object value) throws Exception {
+		try {
+			_setter.invokeExact(instance, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	@Override
+	public void setBoolean(Command instance, boolean value) throws Exception {
+		if(_type != boolean.class) {
+			set(instance, value);
+			return;
+		}
+		try {
+			_primitiveSetter.invokeExact(instance, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	@Override
+	public void setInt(Command instance, int value) throws Exception {
+		if(_type != int.class) {
+			set(instance, value);
+			return;
+		}
+		try {
+			_primitiveSetter.invokeExact(instance, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	@Override
+	public void setLong(Command instance, long value) throws Exception {
+		if(_type != long.class) {
+			set(instance, value);
+			return;
+		}
+		try {
+			_primitiveSetter.invokeExact(instance, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	@Override
+	public void setDouble(Command instance, double value) throws Exception {
+		if(_type != double.class) {
+			set(instance, value);
+			return;
+		}
+		try {
+			_primitiveSetter.invokeExact(instance, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	private static Exception rethrow(Throwable t) {
+		if(t instanceof Error) throw (Error)t;
+		if(t instanceof Exception) return (Exception)t;
+		return new RuntimeException(t);
+	}
+}
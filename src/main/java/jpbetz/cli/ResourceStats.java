@@ -0,0 +1,155 @@
+package jpbetz.cli;
+
+import java.io.PrintStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * The resources used by a command line run with the --stats option, see {@link CommandSet#setStatsEnabled(boolean)}:
+ * wall time, the CPU time of the thread and the bytes it allocated, garbage collections, peak heap and classes
+ * loaded.  Work a command hands to other threads is counted by wall time, garbage collections and peak heap only.
+ * Measurements the JVM does not support are reported as -1.
+ *
+ * Only loaded when --stats is given, so the java.management module costs nothing otherwise.
+ */
+final class ResourceStats {
+	private final ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+	private final ClassLoadingMXBean _classes = ManagementFactory.getClassLoadingMXBean();
+	private final long _wallTime;
+	private final long _cpuTime;
+	private final long _allocatedBytes;
+	private final long _gcCount;
+	private final long _gcTime;
+	private final long _classesLoaded;
+	private final long _classesUnloaded;
+
+	/**
+	 * Starts measuring, resetting the peak usage of the heap's memory pools.
+	 */
+	ResourceStats() {
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+		_classesLoaded = _classes.getTotalLoadedClassCount();
+		_classesUnloaded = _classes.getUnloadedClassCount();
+		_gcCount = gcCount();
+		_gcTime = gcTime();
+		_allocatedBytes = allocatedBytes();
+		_cpuTime = cpuTime();
+		_wallTime = System.nanoTime();
+	}
+
+	/**
+	 * Prints what was used since measuring started, as text or as a single line of JSON.
+	 */
+	void print(PrintStream out, String commandLine, int exitStatus, boolean isJson) {
+		long wallTime = System.nanoTime() - _wallTime;
+		long cpuTime = difference(cpuTime(), _cpuTime);
+		long allocatedBytes = difference(allocatedBytes(), _allocatedBytes);
+		long gcCount = difference(gcCount(), _gcCount);
+		long gcTime = difference(gcTime(), _gcTime);
+		long peakHeap = peakHeap();
+		long classesLoaded = _classes.getTotalLoadedClassCount() - _classesLoaded;
+		long classesUnloaded = _classes.getUnloadedClassCount() - _classesUnloaded;
+
+		StringBuilder stats = new StringBuilder();
+		if(isJson) {
+			stats.append("{\"command\":\"").append(commandLine.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t"))
+					.append("\",\"exitStatus\":").append(exitStatus)
+					.append(",\"wallTimeNanos\":").append(wallTime)
+					.append(",\"cpuTimeNanos\":").append(cpuTime)
+					.append(",\"allocatedBytes\":").append(allocatedBytes)
+					.append(",\"gcCount\":").append(gcCount)
+					.append(",\"gcTimeMillis\":").append(gcTime)
+					.append(",\"peakHeapBytes\":").append(peakHeap)
+					.append(",\"classesLoaded\":").append(classesLoaded)
+					.append(",\"classesUnloaded\":").append(classesUnloaded)
+					.append("}\n");
+		} else {
+			stats.append("stats for ").append(commandLine).append(", exit status ").append(exitStatus).append('\n');
+			line(stats, "wall time", millis(wallTime));
+			line(stats, "cpu time", cpuTime < 0 ? "n/a" : millis(cpuTime));
+			line(stats, "allocated", bytes(allocatedBytes));
+			line(stats, "gc", gcCount < 0 ? "n/a" : gcCount + " collections, " + gcTime + " ms");
+			line(stats, "peak heap", bytes(peakHeap));
+			line(stats, "classes", classesLoaded + " loaded, " + classesUnloaded + " unloaded");
+		}
+		out.print(stats);
+		out.flush();
+	}
+
+	private static void line(StringBuilder stats, String name, String value) {
+		stats.append("  ").append(name);
+		for(int i = name.length(); i < 12; i++) {
+			stats.append(' ');
+		}
+		stats.append(value).append('\n');
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f ms", nanos / 1000000.0);
+	}
+
+	private static String bytes(long bytes) {
+		if(bytes < 0) return "n/a";
+		if(bytes < 1024) return bytes + " B";
+		if(bytes < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+		return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+
+	private static long difference(long end, long start) {
+		return end < 0 || start < 0 ? -1 : end - start;
+	}
+
+	private long cpuTime() {
+		return _threads.isCurrentThreadCpuTimeSupported() ? _threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	private long allocatedBytes() {
+		if(_threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)_threads;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if(collector.getCollectionCount() < 0) return -1;
+			count += collector.getCollectionCount();
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if(collector.getCollectionTime() < 0) return -1;
+			time += collector.getCollectionTime();
+		}
+		return time;
+	}
+
+	/**
+	 * @return the sum of the peak usage of the heap's memory pools, an upper bound of the peak heap.
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -0,0 +1,11 @@
+package jpbetz.cli;
+
+/**
+ * A {@link Command} that may be reused for many invocations when pooled by a {@link PooledCommandFactory}.
+ * 
+ * {@link #reset()} is called before an instance is returned to the pool and must restore every field
+ * set from an option or argument to its initial value, otherwise values from one invocation leak into the next.
+ */
+public interface ReusableCommand extends Command {
+	void reset();
+}
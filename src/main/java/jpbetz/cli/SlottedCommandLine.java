@@ -0,0 +1,15 @@
+package jpbetz.cli;
+
+/**
+ * {@link ParsedCommandLine} whose options can also be read by their slot in the {@link OptionTable} it was
+ * parsed against, without looking up names.
+ */
+interface SlottedCommandLine extends ParsedCommandLine {
+	OptionTable getTable();
+	
+	boolean hasOption(int slot);
+	
+	String getOptionValue(int slot);
+	
+	String[] getOptionValues(int slot);
+}
@@ -0,0 +1,42 @@
+package jpbetz.cli;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Prints the {@link CommandMetrics} of the sub commands invoked so far in this JVM, useful when the command set
+ * is served by a long running process such as a {@link CommandServer}.  Added to a command set by
+ * {@link CommandSet#addStatsCommand()}.
+ */
+public class StatsCommand implements Command {
+	public static final String NAME = "stats";
+	public static final String DESCRIPTION = "Print the invocations, failures and latency of each command";
+	
+	@Opt(opt="p", longOpt="prometheus", description="Print the metrics in the Prometheus text format")
+	boolean prometheus;
+	
+	private final CommandMetrics _metrics;
+	
+	public StatsCommand(CommandMetrics metrics) {
+		_metrics = metrics;
+	}
+	
+	@Override
+	public void exec(CommandContext commandLine) throws CommandError, Exception {
+		PrintStream out = commandLine.getEnvironment().getOut();
+		if(prometheus) {
+			_metrics.writePrometheus(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			return;
+		}
+		StringBuilder stats = new StringBuilder();
+		stats.append(String.format(Locale.ROOT, "%-20s %11s %9s %9s %9s %9s %9s%n", "command", "invocations", "failures", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for(CommandStats command : _metrics.snapshot()) {
+			stats.append(String.format(Locale.ROOT, "%-20s %11d %9d %9.3f %9.3f %9.3f %9.3f%n", command.getName(), command.getInvocations(), command.getFailures(),
+					command.getLatency(0.5) / 1e6, command.getLatency(0.9) / 1e6, command.getLatency(0.99) / 1e6, command.getMaxLatency() / 1e6));
+		}
+		out.print(stats);
+		out.flush();
+	}
+}
@@ -0,0 +1,32 @@
+package jpbetz.cli;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Converts the text of an option or argument to the type of its field.  Registered by type with 
+ * {@link ValueConverters#register(Class, ValueConverter)}.
+ * 
+ * Converters for numeric types should also override the primitive methods, which are used to set int, long
+ * and double fields without boxing.  Converters must be thread safe.
+ *
+ * @param <T> the type converted to.
+ */
+public interface ValueConverter<T> {
+	/**
+	 * @param environment of the invocation, against which relative paths are resolved.
+	 * @throws ParseException if the value cannot be converted.
+	 */
+	T convert(String value, CommandEnvironment environment) throws ParseException;
+	
+	default int convertInt(String value, CommandEnvironment environment) throws ParseException {
+		return ((Number)convert(value, environment)).intValue();
+	}
+	
+	default long convertLong(String value, CommandEnvironment environment) throws ParseException {
+		return ((Number)convert(value, environment)).longValue();
+	}
+	
+	default double convertDouble(String value, CommandEnvironment environment) throws ParseException {
+		return ((Number)convert(value, environment)).doubleValue();
+	}
+}
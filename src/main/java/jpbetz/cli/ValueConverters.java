@@ -0,0 +1,543 @@
+package jpbetz.cli;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.TypeHandler;
+
+/**
+ * Registry of the {@link ValueConverter} for each type of option and argument.
+ * 
+ * Converters are looked up when a command is registered, once per option and argument, so custom
+ * converters must be registered before the commands that use them.  A type without a registered converter 
+ * uses, in order: the converter of its enum, a public static valueOf(String) method or public String
+ * constructor, and commons-cli's TypeHandler.
+ * 
+ * Built in converters cover String, Number, int, long, double and their boxes, BigInteger, BigDecimal, 
+ * File, File[], FileInputStream, InputStream, FileChannel, MappedByteBuffer (read only), Path, URL, Class, java.sql.Date, Duration, Instant, LocalDate, LocalTime and
+ * LocalDateTime.  Class and URL conversions are memoized.  A File, FileInputStream or InputStream given
+ * as "-" is stdin, see {@link CommandContext#open(File)}.  Streams and channels are closed when the command
+ * returns.
+ */
+public class ValueConverters {
+	private static final int MEMO_SIZE = 256;
+	
+	private static final ConcurrentMap<Object, ValueConverter<?>> _registered = new ConcurrentHashMap<Object, ValueConverter<?>>();
+	private static final ConcurrentMap<Object, ValueConverter<?>> _resolved = new ConcurrentHashMap<Object, ValueConverter<?>>();
+	
+	static {
+		ValueConverter<String> string = new ValueConverter<String>() {
+			@Override
+			public String convert(String value, CommandEnvironment environment) {
+				return value;
+			}
+		};
+		register(String.class, string);
+		register(CharSequence.class, string);
+		
+		ValueConverter<Integer> intConverter = new ValueConverter<Integer>() {
+			@Override
+			public Integer convert(String value, CommandEnvironment environment) throws ParseException {
+				return convertInt(value, environment);
+			}
+			
+			@Override
+			public int convertInt(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return Integer.parseInt(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid integer: " + value);
+				}
+			}
+		};
+		register(int.class, intConverter);
+		register(Integer.class, intConverter);
+		
+		ValueConverter<Long> longConverter = new ValueConverter<Long>() {
+			@Override
+			public Long convert(String value, CommandEnvironment environment) throws ParseException {
+				return convertLong(value, environment);
+			}
+			
+			@Override
+			public long convertLong(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return Long.parseLong(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid integer: " + value);
+				}
+			}
+		};
+		register(long.class, longConverter);
+		register(Long.class, longConverter);
+		
+		ValueConverter<Double> doubleConverter = new ValueConverter<Double>() {
+			@Override
+			public Double convert(String value, CommandEnvironment environment) throws ParseException {
+				return convertDouble(value, environment);
+			}
+			
+			@Override
+			public double convertDouble(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return Double.parseDouble(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid number: " + value);
+				}
+			}
+		};
+		register(double.class, doubleConverter);
+		register(Double.class, doubleConverter);
+		
+		// as TypeHandler does, a Long unless the value has a decimal point
+		register(Number.class, new ValueConverter<Number>() {
+			@Override
+			public Number convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return value.indexOf('.') != -1 ? (Number)Double.valueOf(value.trim()) : (Number)Long.valueOf(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid number: " + value);
+				}
+			}
+		});
+		
+		register(File.class, new ValueConverter<File>() {
+			@Override
+			public File convert(String value, CommandEnvironment environment) {
+				if(value.equals("-")) {
+					return CommandContext.STDIN;
+				}
+				return new File(environment.resolvePath(value));
+			}
+		});
+		register(File[].class, new ValueConverter<File[]>() {
+			@Override
+			public File[] convert(String value, CommandEnvironment environment) {
+				String[] paths = value.split(File.pathSeparator);
+				File[] files = new File[paths.length];
+				for(int i = 0; i < paths.length; i++) {
+					files[i] = new File(environment.resolvePath(paths[i]));
+				}
+				return files;
+			}
+		});
+		register(FileInputStream.class, new ValueConverter<FileInputStream>() {
+			@Override
+			public FileInputStream convert(String value, CommandEnvironment environment) throws ParseException {
+				if(value.equals("-")) {
+					if(!environment.isSystemIn()) {
+						throw new ParseException("stdin is not a file for this invocation, use an InputStream field to accept -");
+					}
+					return new FileInputStream(FileDescriptor.in) {
+						@Override
+						public void close() {
+							// closing would close the JVM's stdin
+						}
+					};
+				}
+				try {
+					return new FileInputStream(environment.resolvePath(value));
+				} catch (FileNotFoundException e) {
+					throw new ParseException("File not found: " + value);
+				}
+			}
+		});
+		register(InputStream.class, new ValueConverter<InputStream>() {
+			@Override
+			public InputStream convert(String value, CommandEnvironment environment) throws ParseException {
+				if(value.equals("-")) {
+					return CommandEnvironment.unclosable(environment.getIn());
+				}
+				try {
+					return new FileInputStream(environment.resolvePath(value));
+				} catch (FileNotFoundException e) {
+					throw new ParseException("File not found: " + value);
+				}
+			}
+		});
+		register(FileChannel.class, new ValueConverter<FileChannel>() {
+			@Override
+			public FileChannel convert(String value, CommandEnvironment environment) throws ParseException {
+				return openChannel(value, environment);
+			}
+		});
+		ValueConverter<MappedByteBuffer> mapped = new ValueConverter<MappedByteBuffer>() {
+			@Override
+			public MappedByteBuffer convert(String value, CommandEnvironment environment) throws ParseException {
+				FileChannel channel = openChannel(value, environment);
+				try {
+					long size = channel.size();
+					if(size > Integer.MAX_VALUE) {
+						throw new ParseException("File too large to map, use a FileChannel: " + value);
+					}
+					// the mapping stays valid once the channel is closed
+					return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				} catch (IOException e) {
+					throw new ParseException("Unable to map " + value + ": " + e.getMessage());
+				} finally {
+					try {
+						channel.close();
+					} catch (IOException e) {
+						// nothing was written
+					}
+				}
+			}
+		};
+		register(MappedByteBuffer.class, mapped);
+		register(ByteBuffer.class, mapped);
+		register(Path.class, new ValueConverter<Path>() {
+			@Override
+			public Path convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return Paths.get(environment.resolvePath(value));
+				} catch (InvalidPathException e) {
+					throw new ParseException("Invalid path: " + value);
+				}
+			}
+		});
+		
+		register(URL.class, memoize(new ValueConverter<URL>() {
+			@Override
+			public URL convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return new URL(value);
+				} catch (MalformedURLException e) {
+					throw new ParseException("Invalid URL: " + value);
+				}
+			}
+		}));
+		register(Class.class, memoize(new ValueConverter<Class<?>>() {
+			@Override
+			public Class<?> convert(String value, CommandEnvironment environment) throws ParseException {
+				ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+				try {
+					return Class.forName(value, true, classLoader != null ? classLoader : ValueConverters.class.getClassLoader());
+				} catch (ClassNotFoundException e) {
+					throw new ParseException("Unable to find the class: " + value);
+				}
+			}
+		}));
+		
+		register(java.sql.Date.class, new ValueConverter<java.sql.Date>() {
+			@Override
+			public java.sql.Date convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return java.sql.Date.valueOf(value.trim());
+				} catch (IllegalArgumentException e) {
+					throw new ParseException("Invalid date, expected yyyy-mm-dd: " + value);
+				}
+			}
+		});
+		register(Duration.class, new ValueConverter<Duration>() {
+			@Override
+			public Duration convert(String value, CommandEnvironment environment) throws ParseException {
+				return parseDuration(value.trim());
+			}
+		});
+		register(Instant.class, new ValueConverter<Instant>() {
+			@Override
+			public Instant convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return Instant.parse(value.trim());
+				} catch (DateTimeParseException e) {
+					throw new ParseException("Invalid instant: " + value);
+				}
+			}
+		});
+		register(LocalDate.class, new ValueConverter<LocalDate>() {
+			@Override
+			public LocalDate convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return LocalDate.parse(value.trim());
+				} catch (DateTimeParseException e) {
+					throw new ParseException("Invalid date: " + value);
+				}
+			}
+		});
+		register(LocalTime.class, new ValueConverter<LocalTime>() {
+			@Override
+			public LocalTime convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return LocalTime.parse(value.trim());
+				} catch (DateTimeParseException e) {
+					throw new ParseException("Invalid time: " + value);
+				}
+			}
+		});
+		register(LocalDateTime.class, new ValueConverter<LocalDateTime>() {
+			@Override
+			public LocalDateTime convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return LocalDateTime.parse(value.trim());
+				} catch (DateTimeParseException e) {
+					throw new ParseException("Invalid date and time: " + value);
+				}
+			}
+		});
+		register(BigInteger.class, new ValueConverter<BigInteger>() {
+			@Override
+			public BigInteger convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return new BigInteger(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid integer: " + value);
+				}
+			}
+		});
+		register(BigDecimal.class, new ValueConverter<BigDecimal>() {
+			@Override
+			public BigDecimal convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return new BigDecimal(value.trim());
+				} catch (NumberFormatException e) {
+					throw new ParseException("Invalid number: " + value);
+				}
+			}
+		});
+	}
+	
+	private ValueConverters() {}
+	
+	/**
+	 * Registers the converter for the type, replacing any registered before.  Commands registered earlier keep
+	 * the converter they were registered with.
+	 */
+	public static <T> void register(Class<T> type, ValueConverter<? extends T> converter) {
+		_registered.put(type, converter);
+		_resolved.clear();
+	}
+	
+	/**
+	 * @return the converter for the type, or a converter using commons-cli's TypeHandler if there is none.
+	 */
+	public static ValueConverter<?> forType(Object type) {
+		ValueConverter<?> converter = _resolved.get(type);
+		if(converter == null) {
+			converter = resolve(type);
+			if(converter == null) {
+				converter = typeHandler(type);
+			}
+			_resolved.putIfAbsent(type, converter);
+		}
+		return converter;
+	}
+	
+	/**
+	 * @return true if the type has a converter of its own, rather than falling back to TypeHandler.
+	 */
+	public static boolean isSupported(Object type) {
+		return resolve(type) != null;
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ValueConverter<?> resolve(Object type) {
+		ValueConverter<?> converter = _registered.get(type);
+		if(converter != null || !(type instanceof Class)) {
+			return converter;
+		}
+		Class<?> clazz = (Class<?>)type;
+		if(clazz.isEnum()) {
+			return new EnumConverter(clazz);
+		}
+		if(clazz.isArray()) {
+			ValueConverter<?> component = resolve(clazz.getComponentType());
+			return component == null ? null : new ArrayConverter(clazz.getComponentType(), component);
+		}
+		return factoryMethod(clazz);
+	}
+	
+	/**
+	 * @return a converter memoizing the results of the given one, for conversions such as class lookups
+	 * that are expensive and repeated across invocations.  Results must be immutable or safe to share.
+	 */
+	public static <T> ValueConverter<T> memoize(final ValueConverter<T> converter) {
+		final ConcurrentMap<String, T> memo = new ConcurrentHashMap<String, T>();
+		return new ValueConverter<T>() {
+			@Override
+			public T convert(String value, CommandEnvironment environment) throws ParseException {
+				T result = memo.get(value);
+				if(result == null) {
+					result = converter.convert(value, environment);
+					if(memo.size() >= MEMO_SIZE) {
+						memo.clear();
+					}
+					memo.put(value, result);
+				}
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * @return a converter calling the type's public static valueOf(String) or public String constructor, or
+	 * null if it has neither.
+	 */
+	private static ValueConverter<?> factoryMethod(final Class<?> type) {
+		MethodHandle handle;
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		try {
+			handle = lookup.findStatic(type, "valueOf", MethodType.methodType(type, String.class));
+		} catch (Exception e) {
+			try {
+				if(Modifier.isAbstract(type.getModifiers())) return null;
+				handle = lookup.findConstructor(type, MethodType.methodType(void.class, String.class));
+			} catch (Exception e2) {
+				return null;
+			}
+		}
+		final MethodHandle factory = handle.asType(MethodType.methodType(Object.class, String.class));
+		return new ValueConverter<Object>() {
+			@Override
+			public Object convert(String value, CommandEnvironment environment) throws ParseException {
+				try {
+					return factory.invokeExact(value);
+				} catch (Exception e) {
+					throw new ParseException("Invalid " + type.getSimpleName() + ": " + value);
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+	
+	private static ValueConverter<?> typeHandler(final Object type) {
+		return new ValueConverter<Object>() {
+			@Override
+			public Object convert(String value, CommandEnvironment environment) throws ParseException {
+				return TypeHandler.createValue(value, type);
+			}
+		};
+	}
+	
+	private static FileChannel openChannel(String value, CommandEnvironment environment) throws ParseException {
+		if(value.equals("-")) {
+			throw new ParseException("stdin cannot be opened as a file channel");
+		}
+		try {
+			return FileChannel.open(Paths.get(environment.resolvePath(value)), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new ParseException("File not found: " + value);
+		} catch (IOException e) {
+			throw new ParseException("Unable to open " + value + ": " + e.getMessage());
+		} catch (InvalidPathException e) {
+			throw new ParseException("Invalid path: " + value);
+		}
+	}
+	
+	/**
+	 * Parses ISO-8601 durations, "PT1M30S", or a number with one of the units ms, s, m, h or d, "90s".
+	 */
+	static Duration parseDuration(String value) throws ParseException {
+		try {
+			if(value.startsWith("P") || value.startsWith("p") || value.startsWith("-P")) {
+				return Duration.parse(value);
+			}
+			int unit = 0;
+			while(unit < value.length() && (Character.isDigit(value.charAt(unit)) || value.charAt(unit) == '-')) unit++;
+			long amount = Long.parseLong(value.substring(0, unit));
+			String suffix = value.substring(unit).trim().toLowerCase(Locale.ROOT);
+			if(suffix.equals("ms")) return Duration.ofMillis(amount);
+			if(suffix.equals("s") || suffix.equals("")) return Duration.ofSeconds(amount);
+			if(suffix.equals("m")) return Duration.ofMinutes(amount);
+			if(suffix.equals("h")) return Duration.ofHours(amount);
+			if(suffix.equals("d")) return Duration.ofDays(amount);
+		} catch (RuntimeException e) {
+			// reported below
+		}
+		throw new ParseException("Invalid duration: " + value);
+	}
+	
+	/**
+	 * @return true if the converter for the type was registered, rather than derived from another.
+	 */
+	static boolean isRegistered(Object type) {
+		return _registered.containsKey(type);
+	}
+	
+	/**
+	 * Converts a single value to an array of one.  Fields binding every value of a repeated option or vararg
+	 * are converted in bulk by {@link FieldInjector} instead.
+	 */
+	private static class ArrayConverter implements ValueConverter<Object> {
+		private final Class<?> _componentType;
+		private final ValueConverter<?> _component;
+		
+		ArrayConverter(Class<?> componentType, ValueConverter<?> component) {
+			_componentType = componentType;
+			_component = component;
+		}
+		
+		@Override
+		public Object convert(String value, CommandEnvironment environment) throws ParseException {
+			Object array = Array.newInstance(_componentType, 1);
+			Array.set(array, 0, _component.convert(value, environment));
+			return array;
+		}
+	}
+	
+	/**
+	 * Matches constants by name, ignoring case if no constant matches exactly.
+	 */
+	private static class EnumConverter<E extends Enum<E>> implements ValueConverter<E> {
+		private final Class<E> _type;
+		private final Map<String, E> _constants = new HashMap<String, E>();
+		
+		EnumConverter(Class<E> type) {
+			_type = type;
+			for(E constant : type.getEnumConstants()) {
+				_constants.put(constant.name().toLowerCase(Locale.ROOT), constant);
+			}
+			for(E constant : type.getEnumConstants()) {
+				_constants.put(constant.name(), constant);
+			}
+		}
+		
+		@Override
+		public E convert(String value, CommandEnvironment environment) throws ParseException {
+			E constant = _constants.get(value);
+			if(constant == null) {
+				constant = _constants.get(value.toLowerCase(Locale.ROOT));
+			}
+			if(constant == null) {
+				throw new ParseException("Invalid " + _type.getSimpleName() + ": " + value + ", expected one of " + Arrays.toString(_type.getEnumConstants()));
+			}
+			return constant;
+		}
+	}
+}
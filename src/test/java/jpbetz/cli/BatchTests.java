@@ -0,0 +1,79 @@
+package jpbetz.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verify the batch command runs each command line and reports the ones that fail.
+ */
+public class BatchTests extends TestCase {
+	
+	@SubCommand(name="say", description="Print the argument")
+	public static class Say implements Command {
+		@Arg(name="word")
+		String word;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			System.out.println(word);
+		}
+	}
+	
+	@SubCommand(name="fail", description="Exits with status 2")
+	public static class Fail implements Command {
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			commandLine.setExitStatus(2);
+		}
+	}
+	
+	private static final String INPUT = "# greetings\nsay hello\n\nsay 'two words'\nfail\nsay \"bye\"\n";
+	
+	public BatchTests(String testName) {
+		super(testName);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(BatchTests.class);
+	}
+	
+	public void testSequential() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(1, runBatch(out, err, "-"));
+		assertEquals("hello\ntwo words\nbye\n", out.toString().replace(System.lineSeparator(), "\n"));
+		assertTrue(err.toString().contains("line 5 exited with status 2: fail"));
+		assertTrue(err.toString().contains("1 of 4 command lines failed"));
+	}
+	
+	public void testConcurrent() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(1, runBatch(out, err, "-", "--jobs", "4"));
+		assertEquals("hello\ntwo words\nbye\n", out.toString().replace(System.lineSeparator(), "\n"));
+		assertTrue(err.toString().contains("1 of 4 command lines failed"));
+	}
+	
+	private int runBatch(ByteArrayOutputStream out, ByteArrayOutputStream err, String... args) {
+		CommandSet app = new CommandSet("test-app");
+		app.addSubCommands(Say.class, Fail.class);
+		app.addBatchCommand();
+		
+		String[] batchArgs = new String[args.length + 1];
+		batchArgs[0] = "batch";
+		System.arraycopy(args, 0, batchArgs, 1, args.length);
+		
+		CommandEnvironment.installSystemStreams();
+		CommandEnvironment.set(new CommandEnvironment(new ByteArrayInputStream(INPUT.getBytes()), new PrintStream(out, true), new PrintStream(err, true), null, null));
+		try {
+			return app.run(batchArgs);
+		} finally {
+			CommandEnvironment.clear();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package jpbetz.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verify completion scripts list the sub commands, their options and the values of their arguments.
+ */
+public class CompletionTests extends TestCase {
+	
+	public enum Level { DEBUG, INFO }
+	
+	@SubCommand(name="copy", description="Copy a file")
+	public static class Copy implements Command {
+		@Arg(name="source")
+		File source;
+		
+		@Arg(name="level")
+		Level level;
+		
+		@Opt(opt="n", longOpt="count", description="Number of copies")
+		int count;
+		
+		@Opt(opt="v", description="Verbose")
+		boolean verbose;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+		}
+	}
+	
+	public CompletionTests(String testName) {
+		super(testName);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(CompletionTests.class);
+	}
+	
+	public void testBash() {
+		String script = completion("bash");
+		assertTrue(script.contains("compgen -W \"help completion copy\""));
+		assertTrue(script.contains("-n|--count) COMPREPLY=(); return ;;"));
+		assertTrue(script.contains("-n --count"));
+		assertTrue(script.contains("-n|--count) ((i++)) ;;"));
+		assertTrue(script.contains("0) COMPREPLY=($(compgen -f -- \"$cur\")) ;;"));
+		assertTrue(script.contains("1) COMPREPLY=($(compgen -W \"debug info\" -- \"$cur\")) ;;"));
+		assertTrue(script.contains("complete -o filenames -F _test_app_complete test-app"));
+	}
+	
+	public void testZsh() {
+		String script = completion("zsh");
+		assertTrue(script.startsWith("#compdef test-app\n"));
+		assertTrue(script.contains("'copy:Copy a file'"));
+		assertTrue(script.contains("'(-n --count)'{-n,--count}'[Number of copies]:int: '"));
+		assertTrue(script.contains("':source:_files'"));
+		assertTrue(script.contains("':level:(debug info)'"));
+	}
+	
+	public void testFish() {
+		String script = completion("fish");
+		assertTrue(script.contains("complete -c test-app -n __fish_use_subcommand -a copy -d 'Copy a file'"));
+		assertTrue(script.contains("complete -c test-app -n '__fish_seen_subcommand_from copy' -s n -l count -x -d 'Number of copies'"));
+		assertTrue(script.contains("complete -c test-app -n '__fish_seen_subcommand_from copy' -F"));
+		assertTrue(script.contains("complete -c test-app -n '__fish_seen_subcommand_from copy' -a 'debug info'"));
+	}
+	
+	private static String completion(String shell) {
+		CommandSet app = new CommandSet("test-app");
+		app.addSubCommands(Copy.class);
+		app.addCompletionCommand();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CommandEnvironment.set(new CommandEnvironment(null, new PrintStream(out, true), null, null, null));
+		try {
+			assertEquals(0, app.run(new String[] { "completion", shell }));
+		} finally {
+			CommandEnvironment.clear();
+		}
+		return out.toString().replace(System.lineSeparator(), "\n");
+	}
+}
@@ -0,0 +1,122 @@
+package jpbetz.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verify commands run by a {@link CommandServer} see the client's streams and working directory.
+ */
+public class DaemonTests extends TestCase {
+	
+	@SubCommand(name="upper", description="Upper case stdin")
+	public static class Upper implements Command {
+		@Arg(name="file", optional=true)
+		File file;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			if(file != null) {
+				System.out.println(file.getPath());
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+			String line;
+			while((line = reader.readLine()) != null) {
+				System.out.println(line.toUpperCase());
+			}
+			System.err.println("done");
+		}
+	}
+	
+	@SubCommand(name="fail", description="Always fails")
+	public static class Fail implements Command {
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			throw new CommandError("failed");
+		}
+	}
+	
+	@SubCommand(name="ignore", description="Ignores stdin")
+	public static class Ignore implements Command {
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			Thread.sleep(500);
+		}
+	}
+	
+	public DaemonTests(String testName) {
+		super(testName);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(DaemonTests.class);
+	}
+	
+	public void testServe() throws Exception {
+		Path directory = Files.createTempDirectory("cli-util");
+		Path socket = directory.resolve("test.sock");
+		CommandSet app = new CommandSet("test-app");
+		app.addSubCommands(Upper.class, Fail.class, Ignore.class);
+		
+		PrintStream systemOut = System.out;
+		final CommandServer server = new CommandServer(app, socket);
+		server.bind();
+		Thread serverThread = new Thread() {
+			public void run() {
+				try {
+					server.serve();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		serverThread.start();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			int status = CommandClient.run(socket.toString(), new String[] { "upper", "in.txt" }, new ByteArrayInputStream("a\nb\n".getBytes()), out, err);
+			assertEquals(0, status);
+			String expectedPath = new File(System.getProperty("user.dir"), "in.txt").getPath();
+			assertEquals(expectedPath + "\nA\nB\n", out.toString().replace(System.lineSeparator(), "\n"));
+			assertEquals("done", err.toString().trim());
+			
+			out.reset();
+			err.reset();
+			status = CommandClient.run(socket.toString(), new String[] { "fail" }, new ByteArrayInputStream(new byte[0]), out, err);
+			assertEquals(1, status);
+			assertTrue(err.toString().contains("error: failed"));
+			
+			// a command that never reads a large stdin must not leave the server's stdin pump blocked
+			status = CommandClient.run(socket.toString(), new String[] { "ignore" }, new ByteArrayInputStream(new byte[256 * 1024]), out, err);
+			assertEquals(0, status);
+			for(int i = 0; i < 50 && isPumpingStdin(); i++) {
+				Thread.sleep(100);
+			}
+			assertFalse(isPumpingStdin());
+		} finally {
+			server.close();
+			serverThread.join();
+			Files.deleteIfExists(socket);
+			Files.delete(directory);
+		}
+		assertSame(systemOut, System.out);
+	}
+	
+	private static boolean isPumpingStdin() {
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().equals("cli-util-server-stdin")) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,11 +1,34 @@
 package jpbetz.cli;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
 public class FullTests extends TestCase {
   
   @SubCommand(name="test1", description="Test 1")
@@ -32,6 +55,20 @@ public class FullTests extends TestCase {
 		}
   }
   
+  public static class Blocking implements Command
+  {
+  	final CountDownLatch started = new CountDownLatch(1);
+  	final CountDownLatch finish = new CountDownLatch(1);
+  	volatile int invocations;
+  	
+  	@Override
+  	public void exec(CommandContext commandLine) throws CommandError, Exception {
+  		invocations++;
+  		started.countDown();
+  		finish.await();
+  	}
+  }
+  
   @SubCommand(name="test2", description="Test 2")
   public static class Test2 implements Command
   {
@@ -49,10 +86,139 @@ public class FullTests extends TestCase {
 		}
   }
   
+  @SubCommand(name="test3", description="Test 3")
+  public static class Test3 implements Command
+  {
+		@Arg(name="position")
+		private int position; // intentionally made private to test if we can set it using method handles
+		
+		@Opt(opt="c", longOpt="count", description="A count")
+		int count;
+		
+		@Opt(opt="b", longOpt="big", description="A big number")
+		long big;
+		
+		@Opt(opt="r", longOpt="ratio", description="A ratio")
+		double ratio = 0.5;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+			assertEquals(7, position);
+			assertEquals(3, count);
+			assertEquals(5000000000L, big);
+			assertEquals(0.5, ratio);
+		}
+  }
+  
+  @SubCommand(name="test4", description="Test 4")
+  public static class Test4 implements Command
+  {
+		@Arg(name="ids", isVararg=true)
+		long[] ids;
+		
+		@Opt(opt="w", longOpt="weight", description="Weights")
+		double[] weights;
+		
+		@Opt(opt="t", longOpt="tag", description="Tags")
+		String[] tags;
+		
+		@Opt(opt="c", longOpt="count", description="Counts")
+		int[] counts = new int[0];
+		
+		@Opt(opt="u", longOpt="uri", description="A URI")
+		URI uri;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+			assertTrue(Arrays.equals(new long[] { 1, 2, 5000000000L }, ids));
+			assertTrue(Arrays.equals(new double[] { 0.5, 2 }, weights));
+			assertTrue(Arrays.equals(new String[] { "a", "b" }, tags));
+			assertEquals(0, counts.length);
+		}
+  }
+  
+  @SubCommand(name="link", description="Link")
+  public static class Link implements Command
+  {
+		@Arg(name="target")
+		URI target;
+		
+		@Opt(opt="i", longOpt="input", description="An input")
+		FileInputStream input;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+			// the injected values are those the context converted and kept
+			assertSame(target, commandLine.getArgObject("target"));
+			assertSame(input, commandLine.getOptionObject("i"));
+		}
+  }
+  
+  static final AtomicInteger mismatches = new AtomicInteger();
+  
+  @SubCommand(name="echo", description="Echo")
+  public static class Echo implements ReusableCommand
+  {
+		@Arg(name="value")
+		int value = -1;
+		
+		@Opt(opt="e", longOpt="expected", description="Expected value")
+		int expected;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+			Thread.yield();
+			if(value != expected) mismatches.incrementAndGet();
+		}
+		
+		@Override
+		public void reset() {
+			value = -1;
+			expected = 0;
+		}
+  }
+  
+  @SubCommand(name="ord", description="Required argument after an optional one")
+  public static class Misordered implements Command
+  {
+		@Arg(name="a", optional=true)
+		String a;
+		
+		@Arg(name="b")
+		String b;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+		}
+  }
+  
+  static boolean lazyLoaded = false;
+  static boolean lazyExecuted = false;
+  
+  @SubCommand(name="lazy", description="Lazy")
+  public static class Lazy implements Command
+  {
+  	static {
+  		lazyLoaded = true;
+  	}
+  	
+		@Arg(name="arg1")
+		String arg1;
+		
+		@Override
+	  public void exec(CommandContext commandLine) throws CommandError, Exception {
+			assertEquals("text", arg1);
+			lazyExecuted = true;
+		}
+  }
+  
   public static final CommandSet app1 = new CommandSet("test-app");
   static {
   	app1.addSubCommands(Test1.class);
   	app1.addSubCommands(Test2.class);
+  	app1.addSubCommands(Test3.class);
+  	app1.addSubCommands(Test4.class);
+  	app1.addSubCommands(Echo.class);
   }
   
 	/**
@@ -80,9 +246,421 @@ public class FullTests extends TestCase {
   	
   }
   
+  public void testPrimitiveNumbers()
+  {
+  	String[] args = "test3 -c 3 --big 5000000000 7".split("\\s+");
+  	app1.invoke(args);
+  }
+  
+  public void testArrays()
+  {
+  	String[] args = "test4 -w 0.5 -t a 1 2 --weight 2 --tag b 5000000000".split("\\s+");
+  	assertEquals(0, app1.run(args));
+  	app1.setArgumentParser(new NativeArgumentParser());
+  	try {
+  		assertEquals(0, app1.run(args));
+  		assertEquals(1, app1.run("test4 1 x".split("\\s+")));
+  	} finally {
+  		app1.setArgumentParser(new CommonsArgumentParser());
+  	}
+  }
+  
+  public void testInvalidValue() throws Exception
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Link.class);
+  	ByteArrayOutputStream err = new ByteArrayOutputStream();
+  	Path file = Files.createTempFile("cli-util", ".txt");
+  	CommandEnvironment.set(new CommandEnvironment(null, new PrintStream(new ByteArrayOutputStream(), true), new PrintStream(err, true), null, null));
+  	try {
+  		assertEquals(1, app1.run(new String[] { "test4", "-u", "a b", "1" }));
+  		assertEquals(1, app.run(new String[] { "link", "a b" }));
+  		assertEquals(0, app.run(new String[] { "link", "-i", file.toString(), "http://example.com" }));
+  	} finally {
+  		CommandEnvironment.clear();
+  		Files.delete(file);
+  	}
+  	assertEquals("test4: error: Invalid value for option u: Invalid URI: a b\n"
+  			+ "link: error: Invalid value for argument target: Invalid URI: a b\n", err.toString().replace(System.lineSeparator(), "\n"));
+  }
+  
+  public void testConcurrentInvoke() throws Exception
+  {
+  	invokeConcurrently(app1);
+  	
+  	CommandSet pooled = new CommandSet("test-app");
+  	pooled.addSubCommands(Echo.class);
+  	pooled.setCommandPoolSize(4);
+  	invokeConcurrently(pooled);
+  }
+  
+  private void invokeConcurrently(final CommandSet app) throws Exception
+  {
+  	mismatches.set(0);
+  	Thread[] threads = new Thread[8];
+  	for(int t = 0; t < threads.length; t++) {
+  		final int thread = t;
+  		threads[t] = new Thread() {
+  			public void run() {
+  				for(int i = 0; i < 200; i++) {
+  					int value = thread * 1000 + i;
+  					app.invoke(new String[] { "echo", "-e", String.valueOf(value), String.valueOf(value) });
+  				}
+  			}
+  		};
+  		threads[t].start();
+  	}
+  	for(Thread thread : threads) {
+  		thread.join();
+  	}
+  	assertEquals(0, mismatches.get());
+  }
+  
+  @SuppressWarnings("deprecation")
+  public void testSharedInstance() throws Exception
+  {
+  	final Blocking instance = new Blocking();
+  	final CommandSet app = new CommandSet("test-app");
+  	app.addSubCommand(new CommandSummary(instance, "block", "Blocks", new Options(), new Arguments(), Collections.<Option, Field>emptyMap()));
+  	Thread first = new Thread() {
+  		public void run() {
+  			app.invoke(new String[] { "block" });
+  		}
+  	};
+  	first.start();
+  	instance.started.await();
+  	ByteArrayOutputStream err = new ByteArrayOutputStream();
+  	PrintStream systemErr = System.err;
+  	System.setErr(new PrintStream(err, true));
+  	try {
+  		assertEquals(1, app.run(new String[] { "block" }));
+  	} finally {
+  		System.setErr(systemErr);
+  	}
+  	assertTrue(err.toString().contains("is in use by another invocation"));
+  	
+  	instance.finish.countDown();
+  	first.join();
+  	assertEquals(0, app.run(new String[] { "block" }));
+  	assertEquals(2, instance.invocations);
+  }
+  
+  public void testArgumentOrder()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	try {
+  		app.addSubCommands(Misordered.class);
+  		fail("expected the required argument after an optional one to be rejected");
+  	} catch (IllegalArgumentException e) {
+  		assertTrue(e.getMessage().startsWith("jpbetz.cli.FullTests$Misordered field b: "));
+  	}
+  	assertFalse(app._subCommands.containsKey("ord"));
+  	
+  	app.addSubCommand("ord", "Misordered", "jpbetz.cli.FullTests$Misordered");
+  	ByteArrayOutputStream err = new ByteArrayOutputStream();
+  	PrintStream systemErr = System.err;
+  	System.setErr(new PrintStream(err, true));
+  	try {
+  		assertEquals(1, app.run("ord one".split("\\s+")));
+  	} finally {
+  		System.setErr(systemErr);
+  	}
+  	assertTrue(err.toString().contains("IllegalArgumentException: jpbetz.cli.FullTests$Misordered field b: "));
+  }
+  
+  public void testLazyRegistration()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommand("lazy", "Lazy", "jpbetz.cli.FullTests$Lazy");
+  	app.printHelp();
+  	assertFalse(lazyLoaded);
+  	assertFalse(app._subCommands.get("lazy").isLoaded());
+  	
+  	app.invoke("lazy text".split("\\s+"));
+  	assertTrue(lazyLoaded);
+  	assertTrue(lazyExecuted);
+  }
+  
   public void testPrimitives()
   {
   	String[] args = "test2 -f".split("\\s+");
   	app1.invoke(args);
   }
+  
+  public void testHelp()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommand("lazy", "A command with a description long enough to be wrapped", "jpbetz.cli.FullTests$Lazy");
+  	app.addSubCommands(Test1.class);
+  	
+  	String help = help(app, "help");
+  	assertEquals(help, help(app, "help"));
+  	assertTrue(help.startsWith("usage: test-app <command> [<args>]\n\nAvailable commands are:\n"));
+  	assertTrue(help.contains("  lazy                 A command with a\n                       description long\n"));
+  	assertTrue(help.contains("  test1                Test 1\n"));
+  	
+  	String usage = help(app, "help", "test1");
+  	assertTrue(usage.startsWith("test1: Test 1\nusage: test-app test1 [options]"));
+  	assertTrue(usage.contains("--number"));
+  	assertEquals(usage, help(app, "help", "test1"));
+  }
+  
+  public void testDispatch()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test1.class, Test2.class, Test3.class);
+  	app.addSubCommand("lazy", "Lazy", "jpbetz.cli.FullTests$Lazy");
+  	assertEquals(0, app.run("TEST2 -f".split("\\s+")));
+  	assertEquals("Command not found: tst2\n\nDid you mean one of these?\n  test2\n", output(app, 1, "tst2"));
+  	assertEquals("Command not found: lazzy\n\nDid you mean one of these?\n  lazy\n", output(app, 0, "help", "lazzy"));
+  	assertTrue(output(app, 1, "zzz").startsWith("Command not found: zzz\nusage: test-app"));
+  	
+  	assertEquals(1, app.run("tes -f".split("\\s+")));
+  	app.setPrefixMatchingEnabled(true);
+  	assertEquals(0, app.run("test2 -f".split("\\s+")));
+  	assertEquals("Ambiguous command: tes\n\nDid you mean one of these?\n  test1\n  test2\n  test3\n", output(app, 1, "tes"));
+  	assertTrue(output(app, 0, "help", "la").startsWith("lazy: Lazy\n"));
+  }
+  
+  public void testGroups()
+  {
+  	final AtomicInteger loads = new AtomicInteger();
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test1.class);
+  	app.addGroup("db", "Database commands", new Consumer<CommandSet>() {
+  		@Override
+  		public void accept(CommandSet db) {
+  			loads.incrementAndGet();
+  			db.addSubCommands(Test2.class);
+  			db.addGroup("nested", "Nested commands", new Consumer<CommandSet>() {
+  				@Override
+  				public void accept(CommandSet nested) {
+  					nested.addSubCommand("lazy", "Lazy", "jpbetz.cli.FullTests$Lazy");
+  				}
+  			});
+  		}
+  	});
+  	
+  	assertTrue(help(app, "help").contains("  db                   Database commands\n"));
+  	assertEquals(0, loads.get());
+  	assertEquals(0, app.run("db test2 -f".split("\\s+")));
+  	assertEquals(0, app.run("db test2 -f".split("\\s+")));
+  	assertEquals(1, loads.get());
+  	assertTrue(help(app, "help", "db").startsWith("usage: test-app db <command> [<args>]\n"));
+  	assertTrue(help(app, "help", "db", "nested", "lazy").startsWith("lazy: Lazy\nusage: test-app db nested lazy"));
+  	assertEquals(1, app.run("db nested missing".split("\\s+")));
+  }
+  
+  public void testIndex()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test1.class);
+  	app.addIndexedSubCommands();
+  	
+  	CommandSummary indexed = app._subCommands.get("indexed");
+  	assertEquals("An\tindexed\\command", indexed.getDescription());
+  	assertTrue(help(app, "help").contains("  indexed "));
+  	assertFalse(indexed.isLoaded());
+  	assertEquals(0, app.run("indexed -c 3 -b 5000000000 7".split("\\s+")));
+  	assertTrue(indexed.isLoaded());
+  }
+  
+  public void testInvocationListener()
+  {
+  	final List<Invocation> invocations = new ArrayList<Invocation>();
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test2.class, Echo.class);
+  	app.addSubCommand("fail", "Fails", new Supplier<Command>() {
+  		@Override
+  		public Command get() {
+  			return new Command() {
+  				@Override
+  				public void exec(CommandContext commandLine) throws CommandError {
+  					throw new CommandError("failed");
+  				}
+  			};
+  		}
+  	});
+  	app.addInvocationListener(new InvocationListener() {
+  		@Override
+  		public void invoked(Invocation invocation) {
+  			invocations.add(invocation);
+  		}
+  	});
+  	
+  	assertEquals(0, app.run("test2 -f".split("\\s+")));
+  	output(app, 1, "test2", "-x");
+  	output(app, 1, "echo", "abc");
+  	output(app, 1, "fail");
+  	assertEquals(4, invocations.size());
+  	
+  	Invocation success = invocations.get(0);
+  	assertEquals("test2", success.getCommand().getName());
+  	assertEquals(Invocation.Outcome.SUCCESS, success.getOutcome());
+  	long total = 0;
+  	for(Invocation.Phase phase : Invocation.Phase.values()) {
+  		assertTrue(success.getTime(phase) >= 0);
+  		total += success.getTime(phase);
+  	}
+  	assertEquals(success.getTotalTime(), total);
+  	
+  	Invocation unparsed = invocations.get(1);
+  	assertEquals(Invocation.Outcome.PARSE_ERROR, unparsed.getOutcome());
+  	assertTrue(unparsed.hasReached(Invocation.Phase.PARSE));
+  	assertFalse(unparsed.hasReached(Invocation.Phase.BIND));
+  	assertEquals(-1, unparsed.getTime(Invocation.Phase.EXEC));
+  	assertEquals(Invocation.Outcome.PARSE_ERROR, invocations.get(2).getOutcome());
+  	assertEquals(Invocation.Outcome.COMMAND_ERROR, invocations.get(3).getOutcome());
+  	assertTrue(invocations.get(3).getFailure() instanceof CommandError);
+  	assertEquals(1, invocations.get(3).getExitStatus());
+  	
+  	app.setArgumentParser(new ArgumentParser() {
+  		@Override
+  		public ParsedCommandLine parse(CommandSummary command, String[] args) {
+  			throw new IllegalStateException("broken parser");
+  		}
+  	});
+  	PrintStream err = System.err;
+  	System.setErr(new PrintStream(new ByteArrayOutputStream()));
+  	try {
+  		assertEquals(1, app.run("test2 -f".split("\\s+")));
+  	} finally {
+  		System.setErr(err);
+  	}
+  	Invocation broken = invocations.get(4);
+  	assertEquals(Invocation.Outcome.EXCEPTION, broken.getOutcome());
+  	assertTrue(broken.getFailure() instanceof IllegalStateException);
+  	assertTrue(broken.hasReached(Invocation.Phase.PARSE));
+  	assertFalse(broken.hasReached(Invocation.Phase.BIND));
+  }
+  
+  public void testFlightRecorderEvents() throws Exception
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test2.class);
+  	app.setFlightRecorderEventsEnabled(true);
+  	Path file = Files.createTempFile("cli-util", ".jfr");
+  	Recording recording = new Recording();
+  	try {
+  		recording.enable("jpbetz.cli.Parse");
+  		recording.enable("jpbetz.cli.Invocation");
+  		recording.disable("jpbetz.cli.Lookup");
+  		recording.start();
+  		assertEquals(0, app.run("test2 -f".split("\\s+")));
+  		recording.stop();
+  		recording.dump(file);
+  		
+  		List<String> names = new ArrayList<String>();
+  		for(RecordedEvent event : RecordingFile.readAllEvents(file)) {
+  			names.add(event.getEventType().getName());
+  			assertEquals("test2", event.getString("command"));
+  		}
+  		assertTrue(names.contains("jpbetz.cli.Parse"));
+  		assertTrue(names.contains("jpbetz.cli.Invocation"));
+  	} finally {
+  		recording.close();
+  		Files.delete(file);
+  	}
+  }
+  
+  public void testStats()
+  {
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test2.class);
+  	assertTrue(output(app, 1, "--stats", "test2", "-f").startsWith("Command not found: --stats\n"));
+  	app.setStatsEnabled(true);
+  	
+  	ByteArrayOutputStream err = new ByteArrayOutputStream();
+  	CommandEnvironment.set(new CommandEnvironment(null, null, new PrintStream(err, true), null, null));
+  	try {
+  		assertEquals(0, app.run("--stats test2 -f".split("\\s+")));
+  		assertEquals(0, app.run("--stats=json test2 -f".split("\\s+")));
+  	} finally {
+  		CommandEnvironment.clear();
+  	}
+  	String[] stats = err.toString().split("\r?\n");
+  	assertEquals("stats for test2 -f, exit status 0", stats[0]);
+  	assertTrue(stats[1].startsWith("  wall time   "));
+  	assertTrue(stats[1].endsWith(" ms"));
+  	String json = stats[stats.length - 1];
+  	assertTrue(json.startsWith("{\"command\":\"test2 -f\",\"exitStatus\":0,\"wallTimeNanos\":"));
+  	assertTrue(json.contains(",\"allocatedBytes\":"));
+  	assertTrue(json.endsWith("}"));
+  	assertTrue(output(app, 1, "--stats=xml", "test2").startsWith("Unknown --stats format: xml, expected text or json\n"));
+  }
+  
+  public void testMetrics() throws Exception
+  {
+  	assertEquals(0, LatencyHistogram.bucket(1023));
+  	assertEquals(1, LatencyHistogram.bucket(1024));
+  	assertEquals(2048, LatencyHistogram.upperBound(1));
+  	assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+  	
+  	CommandSet app = new CommandSet("test-app");
+  	app.addSubCommands(Test2.class);
+  	app.addStatsCommand();
+  	for(int i = 0; i < 3; i++) {
+  		assertEquals(0, app.run("test2 -f".split("\\s+")));
+  	}
+  	output(app, 1, "test2", "-x");
+  	
+  	List<CommandStats> snapshot = app.enableMetrics().snapshot();
+  	assertEquals(1, snapshot.size());
+  	CommandStats test2 = snapshot.get(0);
+  	assertEquals("test2", test2.getName());
+  	assertEquals(4, test2.getInvocations());
+  	assertEquals(1, test2.getFailures());
+  	assertEquals(1, test2.getCount(Invocation.Outcome.PARSE_ERROR));
+  	assertTrue(test2.getLatency(0.5) > 0);
+  	assertTrue(test2.getLatency(0.99) <= test2.getMaxLatency());
+  	
+  	app.addGroup("db", "Database commands", new Consumer<CommandSet>() {
+  		@Override
+  		public void accept(CommandSet db) {
+  			db.addSubCommands(Test2.class);
+  		}
+  	});
+  	assertEquals(0, app.run("db test2 -f".split("\\s+")));
+  	
+  	String stats = output(app, 0, "stats");
+  	assertTrue(stats.startsWith("command "));
+  	assertTrue(stats.contains("\ntest2                          4         1 "));
+  	String prometheus = output(app, 0, "stats", "--prometheus");
+  	assertTrue(prometheus.contains("cli_invocations_total{application=\"test-app\",command=\"test2\",outcome=\"success\"} 3\n"));
+  	assertTrue(prometheus.contains("cli_invocation_duration_seconds_bucket{application=\"test-app\",command=\"test2\",le=\"+Inf\"} 4\n"));
+  	// a bucket counts latencies below 1024ns, the Prometheus bound is inclusive
+  	assertTrue(prometheus.contains("cli_invocation_duration_seconds_bucket{application=\"test-app\",command=\"test2\",le=\"1.023E-6\"} "));
+  	assertTrue(prometheus.contains("cli_invocation_duration_seconds_count{application=\"test-app\",command=\"stats\"} 1\n"));
+  	assertTrue(prometheus.contains("cli_invocations_total{application=\"test-app\",command=\"db test2\",outcome=\"success\"} 1\n"));
+  	
+  	Path file = Files.createTempFile("cli-util", ".prom");
+  	try {
+  		Files.delete(file);
+  		AutoCloseable export = app.enableMetrics().exportPrometheus(file, 1, TimeUnit.HOURS);
+  		for(int i = 0; i < 100 && !Files.exists(file); i++) {
+  			Thread.sleep(50);
+  		}
+  		export.close();
+  		assertTrue(new String(Files.readAllBytes(file), "UTF-8").startsWith("# HELP cli_invocations_total "));
+  	} finally {
+  		Files.deleteIfExists(file);
+  	}
+  }
+  
+  private static String help(CommandSet app, String... args)
+  {
+  	return output(app, 0, args);
+  }
+  
+  private static String output(CommandSet app, int status, String... args)
+  {
+  	ByteArrayOutputStream out = new ByteArrayOutputStream();
+  	CommandEnvironment.set(new CommandEnvironment(null, new PrintStream(out, true), null, null, Collections.singletonMap("COLUMNS", "40")));
+  	try {
+  		assertEquals(status, app.run(args));
+  	} finally {
+  		CommandEnvironment.clear();
+  	}
+  	return out.toString().replace(System.lineSeparator(), "\n");
+  }
 }
@@ -0,0 +1,227 @@
+package jpbetz.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verify stdin is streamed by records and accepted as "-" for file arguments, and that argument files and
+ * patterns are expanded into varargs.
+ */
+public class InputTests extends TestCase {
+	
+	static final List<String> lines = new ArrayList<String>();
+	
+	@SubCommand(name="cat", description="Collect the lines of a file")
+	public static class Cat implements Command {
+		@Arg(name="file")
+		File file;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			for(String line : RecordReader.lines(commandLine.open(file))) {
+				lines.add(line);
+			}
+		}
+	}
+	
+	static FileChannel lastChannel;
+	
+	@SubCommand(name="scan", description="Read a file mapped and through a channel")
+	public static class Scan implements Command {
+		@Opt(opt="c", longOpt="channel", description="A channel")
+		FileChannel channel;
+		
+		@Arg(name="file")
+		MappedByteBuffer mapped;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			assertEquals(5, mapped.remaining());
+			assertEquals('h', mapped.get(0));
+			assertEquals(5, channel.size());
+			lastChannel = channel;
+		}
+	}
+	
+	static final List<Path> paths = new ArrayList<Path>();
+	
+	@SubCommand(name="list", description="Collect the paths given")
+	public static class ListPaths implements Command {
+		@Arg(name="prefix")
+		String prefix;
+		
+		@Arg(name="paths", isVararg=true)
+		Iterable<Path> values;
+		
+		@Override
+		public void exec(CommandContext commandLine) throws CommandError, Exception {
+			for(Path path : values) {
+				paths.add(Paths.get(prefix).resolve(path));
+			}
+		}
+	}
+	
+	public InputTests(String testName) {
+		super(testName);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(InputTests.class);
+	}
+	
+	public void testRecords() {
+		char[] longLine = new char[100000];
+		Arrays.fill(longLine, 'é');
+		String input = "a\r\n\nb\n" + new String(longLine) + "\nlast";
+		
+		List<String> records = new ArrayList<String>();
+		for(String record : RecordReader.lines(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))) {
+			records.add(record);
+		}
+		assertEquals(Arrays.asList("a", "", "b", new String(longLine), "last"), records);
+		
+		RecordReader reader = new RecordReader(Channels.newChannel(new ByteArrayInputStream("x\0y\0".getBytes())), (byte)0);
+		assertEquals("x", reader.next());
+		assertEquals("y", reader.next());
+		assertFalse(reader.hasNext());
+	}
+	
+	public void testMappedFile() throws Exception {
+		Path file = Files.createTempFile("cli-util", ".txt");
+		Files.write(file, "hello".getBytes());
+		try {
+			CommandSet app = new CommandSet("test-app");
+			app.addSubCommands(Scan.class);
+			assertEquals(0, app.run(new String[] { "scan", "-c", file.toString(), file.toString() }));
+			assertFalse(lastChannel.isOpen());
+			assertEquals(1, app.run(new String[] { "scan", "-c", file.toString(), file.toString() + ".missing" }));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	public void testStdinArgument() {
+		CommandSet app = new CommandSet("test-app");
+		app.addSubCommands(Cat.class);
+		lines.clear();
+		CommandEnvironment.set(new CommandEnvironment(new ByteArrayInputStream("one\ntwo\n".getBytes()), null, null, null, null));
+		try {
+			assertEquals(0, app.run(new String[] { "cat", "-" }));
+		} finally {
+			CommandEnvironment.clear();
+		}
+		assertEquals(Arrays.asList("one", "two"), lines);
+	}
+	
+	public void testArgFiles() throws Exception {
+		Path file = Files.createTempFile("cli-util", ".args");
+		Files.write(file, "b\n\nc\r\n".getBytes());
+		try {
+			CommandSet app = new CommandSet("test-app");
+			app.addSubCommands(ListPaths.class);
+			app.setArgFilesEnabled(true);
+			paths.clear();
+			assertEquals(0, app.run(new String[] { "list", "/root", "a", "@" + file, "@@d" }));
+			assertEquals(Arrays.asList(Paths.get("/root/a"), Paths.get("/root/b"), Paths.get("/root/c"), Paths.get("/root/@d")), paths);
+			
+			paths.clear();
+			assertEquals(0, app.run(new String[] { "list", "@" + file }));
+			assertEquals(Arrays.asList(Paths.get("b/c")), paths);
+			
+			assertEquals(1, app.run(new String[] { "list", "@" + file + ".missing" }));
+			
+			app.setArgFilesEnabled(false);
+			paths.clear();
+			assertEquals(0, app.run(new String[] { "list", "/root", "@x" }));
+			assertEquals(Arrays.asList(Paths.get("/root/@x")), paths);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	public void testGlobs() throws Exception {
+		Path dir = Files.createTempDirectory("cli-util");
+		Path[] files = { dir.resolve("top.log"), dir.resolve("a/x.log"), dir.resolve("a/b/y.log"), dir.resolve("a/b/z.txt") };
+		Files.createDirectories(dir.resolve("a/b"));
+		for(Path file : files) {
+			Files.createFile(file);
+		}
+		try {
+			CommandSet app = new CommandSet("test-app");
+			app.addSubCommands(ListPaths.class);
+			app.setGlobsEnabled(true);
+			paths.clear();
+			assertEquals(0, app.run(new String[] { "list", "/", dir + "/**/*.log", dir + "/a/*" }));
+			Collections.sort(paths.subList(0, 3));
+			Collections.sort(paths.subList(3, 5));
+			assertEquals(Arrays.asList(dir.resolve("a/b/y.log"), dir.resolve("a/x.log"), dir.resolve("top.log"), dir.resolve("a/b"), dir.resolve("a/x.log")), paths);
+			
+			paths.clear();
+			assertEquals(0, app.run(new String[] { "list", "/", dir + "/*.none" }));
+			assertEquals(Arrays.asList(Paths.get(dir + "/*.none")), paths);
+			
+			app.setMaxGlobMatches(2);
+			assertEquals(1, app.run(new String[] { "list", "/", dir + "/**/*.log" }));
+		} finally {
+			for(int i = files.length - 1; i >= 0; i--) {
+				Files.delete(files[i]);
+			}
+			Files.delete(dir.resolve("a/b"));
+			Files.delete(dir.resolve("a"));
+			Files.delete(dir);
+		}
+	}
+	
+	public void testGlobLimitWithSlowReader() throws Exception {
+		Path dir = Files.createTempDirectory("cli-util");
+		int count = 6000;
+		for(int i = 0; i < count; i++) {
+			Files.createFile(dir.resolve(i + ".log"));
+		}
+		try {
+			// the walk fills the queue and passes the limit while the reader waits
+			final GlobIterator paths = new GlobIterator(Arrays.asList(dir + "/*.log").iterator(), CommandEnvironment.current(), 4097);
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			Thread reader = new Thread() {
+				public void run() {
+					try {
+						paths.hasNext();
+						Thread.sleep(500);
+						while(paths.hasNext()) {
+							paths.next();
+						}
+					} catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+			reader.join(10000);
+			assertFalse("reader hung waiting for the end of the walk", reader.isAlive());
+			assertTrue(failure.get() instanceof IllegalArgumentException);
+			paths.close();
+		} finally {
+			for(int i = 0; i < count; i++) {
+				Files.delete(dir.resolve(i + ".log"));
+			}
+			Files.delete(dir);
+		}
+	}
+}
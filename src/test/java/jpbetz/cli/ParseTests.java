@@ -1,6 +1,10 @@
 package jpbetz.cli;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 
@@ -82,11 +86,33 @@ public class ParseTests
   	  public void exec(CommandContext commandLine) throws CommandError, Exception {}
     }
     
+    public enum Mode { FAST, SAFE }
+    
+    @SubCommand(name="test4", description="Test 4")
+    public static class Test4 implements Command
+    {
+    	@Opt(opt="m", longOpt="mode", description="A mode")
+    	public Mode mode;
+    	
+    	@Opt(opt="t", longOpt="timeout", description="A timeout")
+    	public Duration timeout;
+    	
+    	@Opt(opt="d", longOpt="day", description="A day")
+    	public LocalDate day;
+    	
+    	@Arg(name="path")
+    	public Path path;
+    	
+  		@Override
+  	  public void exec(CommandContext commandLine) throws CommandError, Exception {}
+    }
+    
     public static final CommandSet app1 = new CommandSet("test-app");
     static {
     	app1.addSubCommands(Test1.class);
     	app1.addSubCommands(Test2.class);
     	app1.addSubCommands(Test3.class);
+    	app1.addSubCommands(Test4.class);
     }
     
     public void testHappyPath() throws Exception
@@ -125,6 +151,56 @@ public class ParseTests
     	}
     }
     
+    public void testArity() throws Exception
+    {
+    	ArgumentLayout layout = app1._subCommands.get("test1").getArgs().getLayout();
+    	assertEquals(0, layout.getMinArity());
+    	assertEquals(1, layout.getMaxArity());
+    	assertFalse(layout.hasVararg());
+    	assertEquals(0, app1._subCommands.get("test2").getArgs().getLayout().getVarargSlot());
+    	try {
+    		parse(app1, "test1 X Y");
+    		fail("expected too many arguments");
+    	} catch (ParseException e) {
+    	}
+    }
+    
+    public void testKeys() throws Exception
+    {
+    	CommandSummary command = app1._subCommands.get("test1");
+    	ContextKey<Number> number = command.getOptionKey("number", Number.class);
+    	ContextKey<Boolean> flag = command.getOptionKey("f", Boolean.class);
+    	ContextKey<String> arg = command.getArgKey("arg1", String.class);
+    	for(ArgumentParser parser : new ArgumentParser[] { new CommonsArgumentParser(), new NativeArgumentParser() }) {
+    		String[] args = { "-n", "3", "X" };
+    		CommandContext context = new CommandContext(parser.parse(command, args), command);
+    		assertTrue(context.has(number));
+    		assertEquals(3, context.get(number).intValue());
+    		assertSame(context.get(number), context.get(number));
+    		assertFalse(context.has(flag));
+    		assertEquals("X", context.get(arg));
+    		assertEquals(Arrays.asList("X"), context.getAll(arg));
+    	}
+    	
+    	CommandSummary varargs = app1._subCommands.get("test2");
+    	CommandContext context = parse(app1, "test2 X Y Z", new NativeArgumentParser());
+    	List<Object> values = context.getArgObjects(varargs.getArgs().getArg("arg1"));
+    	assertEquals(3, values.size());
+    	assertSame(values, context.getArgObjects(varargs.getArgs().getArg("arg1")));
+    }
+    
+    public void testConverters() throws Exception
+    {
+    	CommandContext context = parse(app1, "test4 -m safe -t 90s -d 2024-02-29 out.txt");
+    	assertEquals(Mode.SAFE, context.getOptionObject("m"));
+    	assertEquals(Duration.ofSeconds(90), context.getOptionObject("t"));
+    	assertEquals(LocalDate.of(2024, 2, 29), context.getOptionObject("d"));
+    	assertEquals(Paths.get("out.txt"), context.getArgObject("path"));
+    	assertEquals(Duration.parse("PT1M"), ValueConverters.forType(Duration.class).convert("PT1M", context.getEnvironment()));
+    	assertEquals(7, ValueConverters.forType(int.class).convertInt(" 7", context.getEnvironment()));
+    	assertNull(parse(app1, "test4 -m slow x").getOptionObject("m"));
+    }
+    
     public void testTypes() throws Exception
     {
     	CommandContext context = parse(app1, "test3 -n 3 -f out.txt -s text -c jpbetz.cli.CliTest");
@@ -134,6 +210,40 @@ public class ParseTests
     	assertEquals(ParseTests.class, context.getOptionObject("c"));
     }
 
+    public void testNativeParser() throws Exception
+    {
+    	String[] lines = { "test1 -n 3 X", "test1 X --number 3 -f", "test1 --number=3", "test1 -n3 -- -X", "test2 X Y Z" };
+    	for(String line : lines) {
+    		CommandContext commons = parse(app1, line);
+    		CommandContext context = parse(app1, line, new NativeArgumentParser());
+    		assertEquals(line, Arrays.asList(commons.getArgs()), Arrays.asList(context.getArgs()));
+    		assertEquals(line, commons.hasOption("f"), context.hasOption("flag"));
+    		assertEquals(line, commons.getOptionValue("n"), context.getOptionValue("number"));
+    	}
+    	
+    	CommandContext context = parse(app1, "test1 -fn 3", new NativeArgumentParser());
+    	assertTrue(context.hasOption("f"));
+    	assertEquals("3", context.getOptionValue("n"));
+    	assertEquals(3, ((Number)context.getOptionObject("n")).intValue());
+    	
+    	try {
+    		parse(app1, "test1 -x", new NativeArgumentParser());
+    		fail("expected unrecognized option");
+    	} catch (ParseException e) {
+    	}
+    	try {
+    		parse(app1, "test1 -n", new NativeArgumentParser());
+    		fail("expected missing argument");
+    	} catch (ParseException e) {
+    	}
+    }
+
+		private CommandContext parse(CommandSet app, String args, ArgumentParser parser) throws ParseException {
+			String[] parts = args.split("\\s+");
+	    CommandSummary command = app._subCommands.get(parts[0]);
+	    return new CommandContext(parser.parse(command, Arrays.copyOfRange(parts, 1, parts.length)), command.getArgs());
+		}
+
 		private CommandContext parse(CommandSet app, String args) throws ParseException {
 			String[] parts = args.split("\\s+");
 	    CommandSummary test1 = app._subCommands.get(parts[0]);